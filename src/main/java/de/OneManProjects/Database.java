@@ -30,19 +30,41 @@ import de.OneManProjects.data.Group;
 import de.OneManProjects.data.Project;
 import de.OneManProjects.data.Tracked;
 import de.OneManProjects.data.User;
+import de.OneManProjects.data.dto.TrackingOperation;
+import de.OneManProjects.data.dto.TrackingOperationResult;
 import de.OneManProjects.data.dto.UserApiToken;
+import de.OneManProjects.data.enums.OperationStatus;
 import de.OneManProjects.data.enums.RefType;
 import de.OneManProjects.data.enums.Role;
+import de.OneManProjects.data.enums.TrackingAction;
+import de.OneManProjects.database.ConnectionPool;
+import de.OneManProjects.database.DatabaseConfig;
+import de.OneManProjects.database.Instrumentation;
+import de.OneManProjects.database.Migrations;
+import de.OneManProjects.database.RowHandler;
+import de.OneManProjects.database.TrackedRow;
+import de.OneManProjects.database.TrackedTotal;
+import de.OneManProjects.database.TrackingDimension;
+import de.OneManProjects.database.TrackingFilter;
+import de.OneManProjects.events.Change;
+import de.OneManProjects.events.ChangeBus;
+import de.OneManProjects.metrics.QueryMetrics;
 import de.OneManProjects.security.Auth;
+import de.OneManProjects.security.RoleClaims;
 import de.OneManProjects.security.TokenType;
 import de.OneManProjects.security.UserToken;
 import de.OneManProjects.utils.Util;
 
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.sql.*;
 import java.time.*;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class Database {
 
@@ -53,51 +75,89 @@ public class Database {
     private static final String GROUP_TABLE = "groups";
     private static final String GROUP_REF_TABLE = "groupRef";
     private static final String TOKEN_TABLE = "tokens";
+    private static final String ROLLUP_TABLE = "tracking_daily";
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final int IMPORT_BUFFER_SIZE = 64 * 1024;
+    // projects a user may track, parameters: the user three times
+    private static final String TRACKABLE_PROJECT = "((p.refType = '" + RefType.USER + "' AND p.ref = ?) OR " +
+            "(p.refType = '" + RefType.GROUP + "' AND (" +
+            "p.ref IN (SELECT groupId FROM " + GROUP_REF_TABLE + " WHERE idUser = ?) OR " +
+            "p.ref IN (SELECT id FROM " + GROUP_TABLE + " WHERE owner = ?))))";
+    // parameters: user, project, start, sign, end, start, sign
+    private static final String ROLLUP_DELTA = "INSERT INTO " + ROLLUP_TABLE + " AS d (idUser, project, day, seconds, entries) " +
+            "VALUES (?, ?, CAST(CAST(? AS timestamp) AS date), ? * EXTRACT(EPOCH FROM (CAST(? AS timestamp) - CAST(? AS timestamp))), ?) " +
+            "ON CONFLICT (idUser, project, day) DO UPDATE SET seconds = d.seconds + EXCLUDED.seconds, entries = d.entries + EXCLUDED.entries";
+    // parameters: user, project, start
+    private static final String ROLLUP_CLEANUP = "DELETE FROM " + ROLLUP_TABLE + " " +
+            "WHERE idUser = ? AND project = ? AND day = CAST(CAST(? AS timestamp) AS date) AND entries <= 0";
+
+    private static volatile DataSource dataSource;
+
+    public static void configure(final DatabaseConfig config) {
+        final DataSource previous = dataSource;
+        dataSource = ConnectionPool.create(config);
+        ConnectionPool.close(previous);
+    }
+
+    public static void shutdown() {
+        ConnectionPool.close(dataSource);
+        dataSource = null;
+    }
 
     private static Connection getConnection() throws SQLException {
-        final int dbPort = Util.getEnvVar("DATABASE_PORT", Integer::parseInt, true).orElseThrow(() -> new RuntimeException("DATABASE_PORT is not defined"));
-        final String dbHost = Util.getEnvVar("DATABASE_HOST", s -> s, true).orElseThrow(() -> new RuntimeException("DATABASE_HOST  is not defined"));
-        final String dbSecret = Util.getEnvVar("DATABASE_PASSWORD", s -> s, true).orElseThrow(() -> new RuntimeException("DATABASE_PASSWORD is not defined"));
-        final String dbName = Util.getEnvVar("DATABASE_NAME", s -> s, true).orElseThrow(() -> new RuntimeException("DATABASE_NAME is not defined"));
-        final String dbUser = Util.getEnvVar("DATABASE_USER", s -> s, true).orElseThrow(() -> new RuntimeException("DATABASE_USER is not defined"));
-        final Optional<String> dbSsl = Util.getEnvVar("DATABASE_SSL", s -> s, false);
-
-        final String url = String.format("jdbc:postgresql://%s:%d/%s", dbHost, dbPort, dbName);
-        final Properties props = new Properties();
-        props.setProperty("user", dbUser);
-        props.setProperty("password", dbSecret);
-        props.setProperty("ssl", dbSsl.orElse("false"));
-        return DriverManager.getConnection(url, props);
+        final DataSource ds = dataSource;
+        if (ds == null) {
+            throw new IllegalStateException("Database has not been configured");
+        }
+        final long start = System.nanoTime();
+        final Connection connection;
+        try {
+            connection = ds.getConnection();
+        } catch (final SQLException e) {
+            QueryMetrics.connectionFailed();
+            throw e;
+        }
+        QueryMetrics.connectionAcquired(System.nanoTime() - start);
+        return Instrumentation.wrap(connection);
     }
 
     private static Project parseProject(final ResultSet rs) throws SQLException {
-        final int id = rs.getInt("id");
-        final int ref = rs.getInt("ref");
-        final String refType = rs.getString("refType");
-        final double tracked = getUserTrackedMinutesForProject(id, ref);
-        return new Project(id,
-                ref,
-                refType,
+        return new Project(rs.getInt("id"),
+                rs.getInt("ref"),
+                rs.getString("refType"),
                 rs.getString("title"),
                 rs.getString("description"),
                 rs.getString("color"),
                 rs.getBoolean("archived"),
-                tracked);
+                rs.getDouble("tracked"));
     }
 
-    private static Project parseGroupProjectForUser(final ResultSet rs, final int userId) throws SQLException {
-        final int id = rs.getInt("id");
-        final int ref = rs.getInt("ref");
-        final String refType = rs.getString("refType");
-        final double tracked = getUserTrackedMinutesForProject(id, userId);
-        return new Project(id,
-                ref,
-                refType,
-                rs.getString("title"),
-                rs.getString("description"),
-                rs.getString("color"),
-                rs.getBoolean("archived"),
-                tracked);
+    /**
+     * Projects joined with their tracked minutes for the current month from the daily rollup, aggregated in a single query.
+     * The month bounds are always the first two parameters, followed by those of {@code trackingFilter} and {@code where}.
+     */
+    private static String selectProjectsWithTrackedMinutes(final String trackingFilter, final String where) {
+        return "SELECT p.id, p.ref, p.refType, p.title, p.description, p.color, p.archived, " +
+                "COALESCE(SUM(t.seconds), 0) / 60 AS tracked " +
+                "FROM " + PROJECT_TABLE + " p LEFT JOIN " + ROLLUP_TABLE + " t ON t.project = p.id " +
+                "AND t.day >= ? AND t.day < ?" + trackingFilter + " " +
+                "WHERE " + where + " GROUP BY p.id ORDER BY p.id";
+    }
+
+    private static int setCurrentMonth(final PreparedStatement statement, final int index) throws SQLException {
+        statement.setTimestamp(index, Timestamp.from(currentMonthStart()));
+        statement.setTimestamp(index + 1, Timestamp.from(nextMonthStart()));
+        return index + 2;
+    }
+
+    private static List<Project> readProjects(final PreparedStatement statement) throws SQLException {
+        final ResultSet rs = statement.executeQuery();
+        final List<Project> res = new ArrayList<>();
+        while (rs.next()) {
+            res.add(parseProject(rs));
+        }
+        Instrumentation.rowsRead(statement, res.size());
+        return res;
     }
 
     private static UserToken parseToken(final ResultSet rs) throws SQLException {
@@ -143,21 +203,6 @@ public class Database {
         return Arrays.stream(batchUpdateResults).allMatch(updateCount -> updateCount == 1);
     }
 
-    private static Project getAllUserTrackedMinutesForGroupProject(final ResultSet rs) throws SQLException {
-        final int id = rs.getInt("id");
-        final int ref = rs.getInt("ref");
-        final String refType = rs.getString("refType");
-        final double tracked = getAllUserTrackedMinutesForGroupProject(id);
-        return new Project(id,
-                ref,
-                refType,
-                rs.getString("title"),
-                rs.getString("description"),
-                rs.getString("color"),
-                rs.getBoolean("archived"),
-                tracked);
-    }
-
     public static List<Role> getUserRoles(final int userId) throws SQLException {
         final List<Role> roles = new ArrayList<>();
         try (final Connection con = getConnection()) {
@@ -177,7 +222,11 @@ public class Database {
             try (final PreparedStatement statement = con.prepareStatement("DELETE FROM " + GROUP_REF_TABLE + " WHERE idUser = ? AND groupId = ?")) {
                 statement.setInt(1, userId);
                 statement.setInt(2, groupId);
-                return statement.executeUpdate() > 0;
+                final boolean res = statement.executeUpdate() > 0;
+                if (res) {
+                    ChangeBus.publish(Change.shared());
+                }
+                return res;
             }
         }
     }
@@ -197,7 +246,11 @@ public class Database {
             try (final PreparedStatement statement = con.prepareStatement("UPDATE " + USERS_TABLE + " SET email = ? WHERE id = ?")) {
                 statement.setString(1, newMail);
                 statement.setInt(2, userId);
-                return statement.executeUpdate() > 0;
+                final boolean res = statement.executeUpdate() > 0;
+                if (res) {
+                    ChangeBus.publish(Change.shared());
+                }
+                return res;
             }
         }
     }
@@ -241,6 +294,23 @@ public class Database {
         }
     }
 
+    public static Map<Integer, String> getUserMails(final Collection<Integer> ids) throws SQLException {
+        final Map<Integer, String> res = new HashMap<>();
+        if (ids.isEmpty()) {
+            return res;
+        }
+        try (final Connection con = getConnection()) {
+            try (final PreparedStatement statement = con.prepareStatement("SELECT id, email FROM " + USERS_TABLE + " WHERE id = ANY(?)")) {
+                statement.setArray(1, con.createArrayOf("integer", ids.toArray()));
+                final ResultSet rs = statement.executeQuery();
+                while (rs.next()) {
+                    res.put(rs.getInt("id"), rs.getString("email"));
+                }
+                return res;
+            }
+        }
+    }
+
     public static Optional<String> getUserMail(final int id) throws SQLException {
         try (final Connection con = getConnection()) {
             try (final PreparedStatement statement = con.prepareStatement("SELECT email FROM " + USERS_TABLE + " WHERE id = ?")) {
@@ -268,45 +338,58 @@ public class Database {
     }
 
     public static List<Project> getProjects(final int refId, final boolean all) throws SQLException {
+        final String sql = selectProjectsWithTrackedMinutes(" AND t.idUser = p.ref",
+                "p.refType = '" + RefType.USER + "' AND p.ref = ?" + (!all ? " AND p.archived = false" : ""));
         try (final Connection con = getConnection()) {
-            try (final PreparedStatement statement = con.prepareStatement("SELECT id,ref,refType,title,description,color,archived FROM "+ PROJECT_TABLE + " WHERE reftype = '" + RefType.USER + "' AND ref = ?" +
-                    (!all ? " AND archived = false" : ""))) {
-                statement.setInt(1, refId);
-                final ResultSet rs = statement.executeQuery();
-                final List<Project> res = new ArrayList<>();
-                while (rs.next()) {
-                    res.add(parseProject(rs));
-                }
-                return res;
+            try (final PreparedStatement statement = con.prepareStatement(sql)) {
+                final int index = setCurrentMonth(statement, 1);
+                statement.setInt(index, refId);
+                return readProjects(statement);
             }
         }
     }
 
     public static List<Project> getGroupProjects(final int groupId, final boolean all) throws SQLException {
+        final String sql = selectProjectsWithTrackedMinutes("",
+                "p.refType = '" + RefType.GROUP + "' AND p.ref = ?" + (!all ? " AND p.archived = false" : ""));
         try (final Connection con = getConnection()) {
-            try (final PreparedStatement statement = con.prepareStatement("SELECT id,ref,refType,title,description,color,archived FROM "+ PROJECT_TABLE + " WHERE reftype = '" + RefType.GROUP + "' AND ref = ?" +
-                    (!all ? " AND archived = false" : ""))) {
-                statement.setInt(1, groupId);
-                final ResultSet rs = statement.executeQuery();
-                final List<Project> res = new ArrayList<>();
-                while (rs.next()) {
-                    res.add(parseProject(rs));
-                }
-                return res;
+            try (final PreparedStatement statement = con.prepareStatement(sql)) {
+                final int index = setCurrentMonth(statement, 1);
+                statement.setInt(index, groupId);
+                return readProjects(statement);
             }
         }
     }
 
     public static boolean setProjectArchive(final int projectId, final boolean value) throws SQLException {
         try (final Connection con = getConnection()) {
-            try (final PreparedStatement statement = con.prepareStatement("UPDATE "+ PROJECT_TABLE + " SET archived = ? WHERE id = ?")) {
+            try (final PreparedStatement statement = con.prepareStatement("UPDATE "+ PROJECT_TABLE + " SET archived = ? WHERE id = ? RETURNING refType, ref")) {
                 statement.setBoolean(1, value);
                 statement.setInt(2, projectId);
-                return statement.executeUpdate() > 0;
+                return projectChanged(statement.executeQuery());
             }
         }
     }
 
+    /**
+     * Reads the owner returned by a project write and publishes the change to whoever sees the project.
+     */
+    private static boolean projectChanged(final ResultSet rs) throws SQLException {
+        if (rs.next()) {
+            publishProjectChange(rs.getString("refType"), rs.getInt("ref"));
+            return true;
+        }
+        return false;
+    }
+
+    private static void publishProjectChange(final String refType, final int ref) {
+        if (RefType.USER.name().equals(refType)) {
+            ChangeBus.publish(Change.user(ref));
+        } else {
+            ChangeBus.publish(Change.shared());
+        }
+    }
+
     public static List<Integer> getGroupIdForUser(final int userId) throws SQLException {
         final List<Integer> res = new ArrayList<>();
         try(final Connection con = getConnection()) {
@@ -328,7 +411,11 @@ public class Database {
                 statement.setString(2, newGroup.getDescription());
                 statement.setInt(3, newGroup.getId());
                 statement.setInt(4, ownerId);
-                return statement.executeUpdate() > 0;
+                final boolean res = statement.executeUpdate() > 0;
+                if (res) {
+                    ChangeBus.publish(Change.shared());
+                }
+                return res;
             }
         }
     }
@@ -349,29 +436,18 @@ public class Database {
 
     public static boolean updateProjects(final Project toUpdate) throws SQLException{
         try (final Connection con = getConnection()) {
-            try (final PreparedStatement statement = con.prepareStatement("UPDATE " + PROJECT_TABLE + " SET title = ?, description = ?, color = ? WHERE id = ?")) {
+            try (final PreparedStatement statement = con.prepareStatement("UPDATE " + PROJECT_TABLE + " SET title = ?, description = ?, color = ? WHERE id = ? RETURNING refType, ref")) {
                 statement.setString(1, toUpdate.getTitle());
                 statement.setString(2, toUpdate.getDescription());
                 statement.setString(3, toUpdate.getColor());
                 statement.setInt(4, toUpdate.getId());
-                return statement.executeUpdate() > 0;
+                return projectChanged(statement.executeQuery());
             }
         }
     }
 
     public static List<Project> getProjectsFromGroup(final int refId, final boolean all) throws SQLException {
-        try (final Connection con = getConnection()) {
-            final String sql = "SELECT * FROM "+ PROJECT_TABLE +" WHERE ref = ? AND reftype = '" + RefType.GROUP +"'" + (!all ? " AND archived = false" : "");
-            try (final PreparedStatement statement = con.prepareStatement(sql)) {
-                statement.setInt(1, refId);
-                final ResultSet rs = statement.executeQuery();
-                final List<Project> res = new ArrayList<>();
-                while (rs.next()) {
-                    res.add(getAllUserTrackedMinutesForGroupProject(rs));
-                }
-                return res;
-            }
-        }
+        return getGroupProjects(refId, all);
     }
 
     public static Optional<User> getUserInfo(final int id) throws SQLException {
@@ -417,25 +493,19 @@ public class Database {
     }
 
     public static List<Project> getUserGroupProjects(final int refId) throws SQLException {
-        final List<Integer> groupsUserIsIn = Database.getGroupIdForUser(refId);
-        groupsUserIsIn.addAll(getManagedGroups(refId).stream().map(Group::getId).toList());
-        if (!groupsUserIsIn.isEmpty()) {
-            try (final Connection con = getConnection()) {
-                final String sql = "SELECT * FROM " + PROJECT_TABLE + " WHERE reftype = '" + RefType.GROUP + "' AND ref IN (" + groupsUserIsIn.stream().map(id -> "?").collect(Collectors.joining(",")) + ")";
-                try (final PreparedStatement statement = con.prepareStatement(sql)) {
-                    for (int i = 0; i < groupsUserIsIn.size(); i++) {
-                        statement.setInt((i + 1), groupsUserIsIn.get(i));
-                    }
-                    final ResultSet rs = statement.executeQuery();
-                    final List<Project> res = new ArrayList<>();
-                    while (rs.next()) {
-                        res.add(parseGroupProjectForUser(rs, refId));
-                    }
-                    return res;
-                }
+        final String sql = selectProjectsWithTrackedMinutes(" AND t.idUser = ?",
+                "p.refType = '" + RefType.GROUP + "' AND (" +
+                        "p.ref IN (SELECT groupId FROM " + GROUP_REF_TABLE + " WHERE idUser = ?) OR " +
+                        "p.ref IN (SELECT id FROM " + GROUP_TABLE + " WHERE owner = ?))");
+        try (final Connection con = getConnection()) {
+            try (final PreparedStatement statement = con.prepareStatement(sql)) {
+                final int index = setCurrentMonth(statement, 1);
+                statement.setInt(index, refId);
+                statement.setInt(index + 1, refId);
+                statement.setInt(index + 2, refId);
+                return readProjects(statement);
             }
         }
-        return new ArrayList<>();
     }
 
     public static List<Tracked> getTrackedForRange(final int userid, final Instant start, final Instant end) throws SQLException {
@@ -451,6 +521,7 @@ public class Database {
                 while (rs.next()) {
                     res.add(parseTracked(rs));
                 }
+                Instrumentation.rowsRead(statement, res.size());
                 return res;
             }
         }
@@ -473,77 +544,238 @@ public class Database {
                 while (rs.next()) {
                     res.add(parseTracked(rs));
                 }
+                Instrumentation.rowsRead(statement, res.size());
                 return res;
             }
         }
     }
 
-    public static double getTrackedMinutesThisMonth(final int userId) throws SQLException {
-        double trackedMin = 0.0;
-        final Timestamp limitStart = Timestamp.valueOf(YearMonth.from(Instant.now().atZone(ZoneId.of("UTC"))).atDay(1).atStartOfDay());
-        final Timestamp limitEnd = Timestamp.valueOf(YearMonth.from(Instant.now().atZone(ZoneId.of("UTC"))).atEndOfMonth().atStartOfDay());
+    /**
+     * Streams the user's finished tracking entries of the range ordered by start, without loading them all into memory.
+     */
+    public static void streamTrackedForRange(final int userid, final Instant start, final Instant end, final RowHandler<Tracked> handler) throws SQLException, IOException {
         try (final Connection con = getConnection()) {
-            try (final PreparedStatement statement = con.prepareStatement("SELECT EXTRACT(EPOCH FROM (end_time - start_time)) / 60 AS difference FROM "+ TRACKING_TABLE + " WHERE " +
-                    "idUser = ? AND start_time > ? AND end_time < ?")) {
-                statement.setInt(1, userId);
-                statement.setTimestamp(2, limitStart);
-                statement.setTimestamp(3, limitEnd);
-                final ResultSet rs = statement.executeQuery();
-                while (rs.next()) {
-                    trackedMin += (rs.getDouble("difference"));
-                }
-                return trackedMin;
+            con.setAutoCommit(false);
+            try (final PreparedStatement statement = con.prepareStatement("SELECT * FROM " + TRACKING_TABLE + " WHERE idUser = ? and start_time >= ? and end_time <= ? ORDER BY start_time")) {
+                statement.setInt(1, userid);
+                statement.setTimestamp(2, Timestamp.from(start));
+                statement.setTimestamp(3, Timestamp.from(end));
+                streamTracked(statement, handler);
             }
+            con.commit();
         }
     }
 
+    /**
+     * Streams the finished tracking entries on the given projects of the range ordered by start,
+     * each with the mail address of its user.
+     */
+    public static void streamGroupTrackedForRange(final List<Integer> groupProjectIds, final Instant start, final Instant end, final RowHandler<TrackedRow> handler) throws SQLException, IOException {
+        try (final Connection con = getConnection()) {
+            con.setAutoCommit(false);
+            try (final PreparedStatement statement = con.prepareStatement("SELECT t.*, u.email FROM " + TRACKING_TABLE + " t " +
+                    "LEFT JOIN " + USERS_TABLE + " u ON u.id = t.idUser " +
+                    "WHERE t.project = ANY(?) and t.start_time >= ? and t.end_time <= ? ORDER BY t.start_time")) {
+                statement.setArray(1, con.createArrayOf("integer", groupProjectIds.toArray()));
+                statement.setTimestamp(2, Timestamp.from(start));
+                statement.setTimestamp(3, Timestamp.from(end));
+                streamRows(statement, rs -> new TrackedRow(parseTracked(rs), Optional.ofNullable(rs.getString("email"))), handler);
+            }
+            con.commit();
+        }
+    }
 
-    public static double getUserTrackedMinutesForProject(final int id, final int user) throws SQLException {
-        double trackedMin = 0.0;
-        final Timestamp limitStart = Timestamp.valueOf(YearMonth.from(Instant.now().atZone(ZoneId.of("UTC"))).atDay(1).atStartOfDay());
-        final Timestamp limitEnd = Timestamp.valueOf(YearMonth.from(Instant.now().atZone(ZoneId.of("UTC"))).atEndOfMonth().atStartOfDay());
+    /**
+     * Copies the group's finished entries in the range as detailed export rows straight from the database into the stream.
+     * Titles, mails and durations are formatted in the query the same way the exporter formats them.
+     * COPY takes no bind parameters, so the ids and timestamps are written into the statement as literals.
+     */
+    public static void copyGroupTrackedForRange(final List<Integer> groupProjectIds, final Instant start, final Instant end, final OutputStream out) throws SQLException, IOException {
+        final String ids = groupProjectIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+        final String query = "COPY (SELECT COALESCE(p.title, 'Unknown'), " +
+                timestampText("t.start_time") + ", " + timestampText("t.end_time") + ", " +
+                "(d.ms / 3600000) || ':' || lpad(((d.ms / 60000) % 60)::text, 2, '0'), " +
+                "COALESCE(u.email, 'Error Unkown'), COALESCE(p.description, 'Unknown') " +
+                "FROM " + TRACKING_TABLE + " t " +
+                "LEFT JOIN " + PROJECT_TABLE + " p ON p.id = t.project " +
+                "LEFT JOIN " + USERS_TABLE + " u ON u.id = t.idUser " +
+                "CROSS JOIN LATERAL (SELECT (floor(EXTRACT(EPOCH FROM t.end_time) * 1000) - floor(EXTRACT(EPOCH FROM t.start_time) * 1000))::bigint AS ms) d " +
+                "WHERE t.project = ANY('{" + ids + "}'::integer[]) " +
+                "AND t.start_time >= '" + Timestamp.from(start) + "'::timestamp AND t.end_time <= '" + Timestamp.from(end) + "'::timestamp " +
+                "ORDER BY t.start_time) TO STDOUT WITH (FORMAT csv)";
         try (final Connection con = getConnection()) {
-            try (final PreparedStatement statement = con.prepareStatement("SELECT EXTRACT(EPOCH FROM (end_time - start_time)) / 60 AS difference FROM "+ TRACKING_TABLE + " WHERE project = ? " +
-                    "AND idUser = ? AND start_time > ? AND end_time < ?")) {
-                statement.setInt(1,id);
-                statement.setInt(2, user);
-                statement.setTimestamp(3,limitStart);
-                statement.setTimestamp(4,limitEnd);
-                final ResultSet rs = statement.executeQuery();
-                while (rs.next()) {
-                    trackedMin += rs.getDouble("difference");
-                }
-                return trackedMin;
+            Instrumentation.copyOut(con, query, out);
+        }
+    }
+
+    /**
+     * Renders a timestamp column like {@link Timestamp#toString()}, with trailing zeros of the fraction removed.
+     */
+    private static String timestampText(final String column) {
+        return "to_char(" + column + ", 'YYYY-MM-DD HH24:MI:SS.') || COALESCE(NULLIF(rtrim(to_char(" + column + ", 'US'), '0'), ''), '0')";
+    }
+
+    private static void streamTracked(final PreparedStatement statement, final RowHandler<Tracked> handler) throws SQLException, IOException {
+        streamRows(statement, Database::parseTracked, handler);
+    }
+
+    private interface RowParser<T> {
+        T parse(ResultSet rs) throws SQLException;
+    }
+
+    private static <T> void streamRows(final PreparedStatement statement, final RowParser<T> parser, final RowHandler<T> handler) throws SQLException, IOException {
+        // the driver only fetches in batches from an open cursor when autocommit is off
+        statement.setFetchSize(STREAM_FETCH_SIZE);
+        long rows = 0;
+        try (final ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                handler.accept(parser.parse(rs));
+                rows++;
             }
+        } finally {
+            Instrumentation.rowsRead(statement, rows);
         }
     }
 
-    public static double getAllUserTrackedMinutesForGroupProject(final int id) throws SQLException {
-        double trackedMin = 0;
-        final Timestamp limitStart = Timestamp.valueOf(YearMonth.from(Instant.now().atZone(ZoneId.of("UTC"))).atDay(1).atStartOfDay());
-        final Timestamp limitEnd = Timestamp.valueOf(YearMonth.from(Instant.now().atZone(ZoneId.of("UTC"))).atEndOfMonth().atStartOfDay());
+    /**
+     * Sums up finished tracking entries in the database, optionally grouped by the given dimensions.
+     * Without any dimension a single total row is returned.
+     */
+    public static List<TrackedTotal> sumTracked(final TrackingFilter filter, final Set<TrackingDimension> groupBy) throws SQLException {
+        final String source = "SELECT idUser, project, start_time, EXTRACT(EPOCH FROM (end_time - start_time)) AS seconds, 1 AS entries " +
+                "FROM " + TRACKING_TABLE + " WHERE end_time IS NOT NULL AND start_time >= ? AND end_time < ?";
+        return sumTotals(source, List.of(Timestamp.from(filter.start()), Timestamp.from(filter.end())), filter, groupBy, ZoneOffset.UTC);
+    }
+
+    /**
+     * Sums up tracked time like {@link #sumTracked}, but reads whole UTC days of the range from the daily rollup and only
+     * the partial days at its edges from the tracking table. An entry counts towards the range it started in,
+     * even when it ends after the range.
+     */
+    public static List<TrackedTotal> sumTrackedDaily(final TrackingFilter filter, final Set<TrackingDimension> groupBy) throws SQLException {
+        final Instant startDay = filter.start().truncatedTo(ChronoUnit.DAYS);
+        Instant fullStart = startDay.equals(filter.start()) ? startDay : startDay.plus(1, ChronoUnit.DAYS);
+        Instant fullEnd = filter.end().truncatedTo(ChronoUnit.DAYS);
+        if (!fullStart.isBefore(fullEnd)) {
+            // no whole day in the range, everything comes from the tracking table
+            fullStart = filter.end();
+            fullEnd = filter.end();
+        }
+        final String source = "SELECT idUser, project, CAST(day AS timestamp) AS start_time, seconds, entries " +
+                "FROM " + ROLLUP_TABLE + " WHERE day >= CAST(? AS date) AND day < CAST(? AS date) " +
+                "UNION ALL " +
+                "SELECT idUser, project, start_time, EXTRACT(EPOCH FROM (end_time - start_time)), 1 " +
+                "FROM " + TRACKING_TABLE + " WHERE end_time IS NOT NULL " +
+                "AND ((start_time >= ? AND start_time < ?) OR (start_time >= ? AND start_time < ?))";
+        return sumTotals(source, List.of(
+                Timestamp.from(fullStart), Timestamp.from(fullEnd),
+                Timestamp.from(filter.start()), Timestamp.from(fullStart),
+                Timestamp.from(fullEnd), Timestamp.from(filter.end())), filter, groupBy, ZoneOffset.UTC);
+    }
+
+    /**
+     * Sums up tracked time for a time series with buckets cut in the local time of {@code zone}. Like {@link #sumTrackedDaily}
+     * entries count towards the bucket they started in. UTC series of whole days or longer buckets are read from the rollup.
+     */
+    public static List<TrackedTotal> sumTrackedSeries(final TrackingFilter filter, final Set<TrackingDimension> groupBy, final ZoneId zone) throws SQLException {
+        if (TrackingDimension.isUtc(zone) && !groupBy.contains(TrackingDimension.HOUR)) {
+            return sumTrackedDaily(filter, groupBy);
+        }
+        final String source = "SELECT idUser, project, start_time, EXTRACT(EPOCH FROM (end_time - start_time)) AS seconds, 1 AS entries " +
+                "FROM " + TRACKING_TABLE + " WHERE end_time IS NOT NULL AND start_time >= ? AND start_time < ?";
+        return sumTotals(source, List.of(Timestamp.from(filter.start()), Timestamp.from(filter.end())), filter, groupBy, zone);
+    }
+
+    /**
+     * Groups the rows of {@code source}, a query with the columns idUser, project, start_time, seconds and entries.
+     * The user and project conditions of the filter are applied to the grouped rows.
+     */
+    private static List<TrackedTotal> sumTotals(final String source, final List<Timestamp> sourceParams, final TrackingFilter filter, final Set<TrackingDimension> groupBy, final ZoneId zone) throws SQLException {
+        if (groupBy.stream().filter(TrackingDimension::isPeriod).count() > 1) {
+            throw new IllegalArgumentException("Tracked time can only be grouped by one period at a time");
+        }
+        final List<TrackingDimension> dimensions = groupBy.stream().sorted().toList();
+        final StringBuilder sql = new StringBuilder("SELECT COALESCE(SUM(seconds), 0) AS seconds, COALESCE(SUM(entries), 0) AS entries");
+        for (final TrackingDimension dimension : dimensions) {
+            sql.append(", ").append(dimension.getExpression(zone)).append(" AS ").append(dimension.name());
+        }
+        sql.append(" FROM (").append(source).append(") t WHERE true");
+        filter.user().ifPresent(u -> sql.append(" AND idUser = ?"));
+        if (!filter.projects().isEmpty()) {
+            sql.append(" AND project = ANY(?)");
+        }
+        if (!dimensions.isEmpty()) {
+            // the dimension columns follow seconds and entries in the select list
+            final String columns = IntStream.rangeClosed(3, dimensions.size() + 2).mapToObj(String::valueOf).collect(Collectors.joining(","));
+            sql.append(" GROUP BY ").append(columns).append(" ORDER BY ").append(columns);
+        }
+        final Optional<TrackingDimension> period = dimensions.stream().filter(TrackingDimension::isPeriod).findFirst();
         try (final Connection con = getConnection()) {
-            try (final PreparedStatement statement = con.prepareStatement("SELECT EXTRACT(EPOCH FROM (end_time - start_time)) / 60 AS difference FROM "+ TRACKING_TABLE + " WHERE project = ? " +
-                    "AND start_time > ? AND end_time < ?")) {
-                statement.setInt(1,id);
-                statement.setTimestamp(2,limitStart);
-                statement.setTimestamp(3,limitEnd);
+            try (final PreparedStatement statement = con.prepareStatement(sql.toString())) {
+                int index = 1;
+                for (final Timestamp param : sourceParams) {
+                    statement.setTimestamp(index++, param);
+                }
+                if (filter.user().isPresent()) {
+                    statement.setInt(index++, filter.user().get());
+                }
+                if (!filter.projects().isEmpty()) {
+                    statement.setArray(index, con.createArrayOf("integer", filter.projects().toArray()));
+                }
                 final ResultSet rs = statement.executeQuery();
-                if (rs.next()) {
-                    trackedMin= (rs.getLong("difference"));
+                final List<TrackedTotal> res = new ArrayList<>();
+                while (rs.next()) {
+                    final Timestamp bucket = period.isPresent() ? rs.getTimestamp(period.get().name()) : null;
+                    res.add(new TrackedTotal(
+                            dimensions.contains(TrackingDimension.PROJECT) ? Optional.of(rs.getInt(TrackingDimension.PROJECT.name())) : Optional.empty(),
+                            dimensions.contains(TrackingDimension.USER) ? Optional.of(rs.getInt(TrackingDimension.USER.name())) : Optional.empty(),
+                            Optional.ofNullable(bucket).map(Timestamp::toLocalDateTime),
+                            rs.getDouble("seconds"),
+                            rs.getInt("entries")));
                 }
-                return trackedMin;
+                Instrumentation.rowsRead(statement, res.size());
+                return res;
             }
         }
     }
 
+    private static double sumTrackedMinutes(final TrackingFilter filter) throws SQLException {
+        return sumTrackedDaily(filter, Set.of()).stream().mapToDouble(TrackedTotal::minutes).sum();
+    }
+
+    private static Instant currentMonthStart() {
+        return YearMonth.now(ZoneOffset.UTC).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    private static Instant nextMonthStart() {
+        return YearMonth.now(ZoneOffset.UTC).plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    public static double getTrackedMinutesThisMonth(final int userId) throws SQLException {
+        return sumTrackedMinutes(TrackingFilter.forUser(userId, currentMonthStart(), nextMonthStart()));
+    }
+
+    public static double getUserTrackedMinutesForProject(final int id, final int user) throws SQLException {
+        return sumTrackedMinutes(TrackingFilter.forUser(user, currentMonthStart(), nextMonthStart()).withProject(id));
+    }
+
+    public static double getAllUserTrackedMinutesForGroupProject(final int id) throws SQLException {
+        return sumTrackedMinutes(TrackingFilter.forProjects(List.of(id), currentMonthStart(), nextMonthStart()));
+    }
+
     public static Optional<Project> getProjectById(final int id) throws SQLException {
         try (final Connection con = getConnection()) {
             try (final PreparedStatement statement = con.prepareStatement("SELECT id,ref,refType,title,description,color,archived FROM "+ PROJECT_TABLE +" WHERE id = ?")) {
                 statement.setInt(1, id);
                 final ResultSet rs = statement.executeQuery();
                 if (rs.next()) {
-                    return Optional.of(parseProject(rs));
+                    return Optional.of(new Project(rs.getInt("id"),
+                            rs.getInt("ref"),
+                            rs.getString("refType"),
+                            rs.getString("title"),
+                            rs.getString("description"),
+                            rs.getString("color"),
+                            rs.getBoolean("archived")));
                 }
                 return Optional.empty();
             }
@@ -597,7 +829,11 @@ public class Database {
                 statement.setString(1, newGroup.getTitle());
                 statement.setString(2, newGroup.getDescription());
                 statement.setInt(3, ownerId);
-                return statement.executeUpdate() > 0;
+                final boolean res = statement.executeUpdate() > 0;
+                if (res) {
+                    ChangeBus.publish(Change.shared());
+                }
+                return res;
             }
         }
     }
@@ -607,7 +843,11 @@ public class Database {
             try (final PreparedStatement statement = con.prepareStatement("DELETE FROM "+ GROUP_TABLE +" WHERE id = ? AND owner = ?")) {
                 statement.setInt(1, groupId);
                 statement.setInt(2, userId);
-                return statement.executeUpdate() > 0;
+                final boolean res = statement.executeUpdate() > 0;
+                if (res) {
+                    ChangeBus.publish(Change.shared());
+                }
+                return res;
             }
         }
     }
@@ -617,7 +857,11 @@ public class Database {
             try (final PreparedStatement statement = con.prepareStatement("INSERT INTO "+ GROUP_REF_TABLE +" (idUser,groupId) VALUES(?,?)")) {
                 statement.setInt(1, userId);
                 statement.setInt(2, groupId);
-                return statement.executeUpdate() > 0;
+                final boolean res = statement.executeUpdate() > 0;
+                if (res) {
+                    ChangeBus.publish(Change.shared());
+                }
+                return res;
             }
         }
     }
@@ -627,7 +871,11 @@ public class Database {
             try (final PreparedStatement statement = con.prepareStatement("DELETE FROM "+ GROUP_REF_TABLE +" WHERE groupId = ? AND idUser = ?")) {
                 statement.setInt(1, groupId);
                 statement.setInt(2, userId);
-                return statement.executeUpdate() > 0;
+                final boolean res = statement.executeUpdate() > 0;
+                if (res) {
+                    ChangeBus.publish(Change.shared());
+                }
+                return res;
             }
         }
     }
@@ -641,7 +889,11 @@ public class Database {
                 statement.setString(4, newProject.getDescription());
                 statement.setString(5, newProject.getColor());
                 statement.setBoolean(6, false);
-                return statement.executeUpdate() > 0;
+                final boolean res = statement.executeUpdate() > 0;
+                if (res) {
+                    ChangeBus.publish(Change.shared());
+                }
+                return res;
             }
         }
     }
@@ -658,6 +910,7 @@ public class Database {
                 statement.executeUpdate();
                 final ResultSet rs = statement.getGeneratedKeys();
                 if (rs.next()) {
+                    publishProjectChange(project.getRefType().name(), refId);
                     return rs.getInt(1);
                 }
                 return -1;
@@ -666,21 +919,31 @@ public class Database {
     }
 
     public static boolean deleteTracking(final int trackingId, final int userId) throws SQLException {
-        try (final Connection con = getConnection()) {
-            try (final PreparedStatement statement = con.prepareStatement("DELETE FROM "+ TRACKING_TABLE +" WHERE id = ? AND idUser = ?")) {
+        final boolean deleted = inTransaction(con -> {
+            try (final PreparedStatement statement = con.prepareStatement("DELETE FROM "+ TRACKING_TABLE +" WHERE id = ? AND idUser = ? " +
+                    "RETURNING idUser, project, start_time, end_time")) {
                 statement.setInt(1, trackingId);
                 statement.setInt(2, userId);
-                return statement.executeUpdate() > 0;
+                final ResultSet rs = statement.executeQuery();
+                if (rs.next()) {
+                    applyToRollup(con, rs, -1);
+                    return true;
+                }
+                return false;
             }
+        });
+        if (deleted) {
+            ChangeBus.publish(Change.tracking(userId));
         }
+        return deleted;
     }
 
     public static boolean deleteProject(final int userID, final int projectId) throws SQLException {
         try (final Connection con = getConnection()) {
-            try (final PreparedStatement statement = con.prepareStatement("DELETE FROM "+ PROJECT_TABLE +" WHERE ref = ? AND id = ?")) {
+            try (final PreparedStatement statement = con.prepareStatement("DELETE FROM "+ PROJECT_TABLE +" WHERE ref = ? AND id = ? RETURNING refType, ref")) {
                 statement.setInt(1, userID);
                 statement.setInt(2, projectId);
-                return statement.executeUpdate() > 0;
+                return projectChanged(statement.executeQuery());
             }
         }
     }
@@ -689,13 +952,17 @@ public class Database {
         try (final Connection con = getConnection()) {
             try (final PreparedStatement statement = con.prepareStatement("DELETE FROM "+ PROJECT_TABLE +" WHERE ref = ?")) {
                 statement.setInt(1, userID);
-                return statement.executeUpdate() > 0;
+                final boolean res = statement.executeUpdate() > 0;
+                if (res) {
+                    ChangeBus.publish(Change.user(userID));
+                }
+                return res;
             }
         }
     }
 
     public static int addTracking(final Tracked tracked) throws SQLException {
-        try (final Connection con = getConnection()) {
+        final int id = inTransaction(con -> {
             try (final PreparedStatement statement = con.prepareStatement("INSERT INTO "+ TRACKING_TABLE +" (project, idUser, start_time, end_time, timezone, active) " +
                     "VALUES(?,?,?,?,?,?)", Statement.RETURN_GENERATED_KEYS)) {
                 statement.setInt(1, tracked.getProjectId());
@@ -707,22 +974,84 @@ public class Database {
                 statement.executeUpdate();
                 final ResultSet rs = statement.getGeneratedKeys();
                 if (rs.next()) {
+                    applyToRollup(con, tracked.getUser(), tracked.getProjectId(), tracked.getStart(), tracked.getEnd(), 1);
                     return rs.getInt(1);
                 }
                 return -1;
             }
+        });
+        if (id > 0) {
+            ChangeBus.publish(Change.tracking(tracked.getUser()));
         }
+        return id;
+    }
+
+    /**
+     * Stops the running entry of the user, if any, and starts one for the project, in a single statement. The project
+     * is checked in the same statement: without access nothing is stopped or started and the result is empty. The old
+     * entry ends exactly when the new one starts and is added to the daily rollup on the way. The time is read after
+     * the running entry is locked, so a switch that waited for another one never ends an entry before it started.
+     * A concurrent start of the same user fails on the single active entry index, see {@link #isUniqueViolation}.
+     */
+    public static Optional<Tracked> switchTracking(final int user, final int projectId, final String timezone) throws SQLException {
+        final Optional<Tracked> started;
+        try (final Connection con = getConnection()) {
+            try (final PreparedStatement statement = con.prepareStatement("WITH target AS (" +
+                    "SELECT p.id FROM " + PROJECT_TABLE + " p WHERE p.id = ? AND " + TRACKABLE_PROJECT +
+                    "), stopped AS (" +
+                    "UPDATE " + TRACKING_TABLE + " SET active = false, end_time = CAST(clock_timestamp() AT TIME ZONE 'UTC' AS timestamp) " +
+                    "WHERE idUser = ? AND active = true AND EXISTS (SELECT 1 FROM target) " +
+                    "RETURNING idUser, project, start_time, end_time" +
+                    "), rolled AS (" +
+                    "INSERT INTO " + ROLLUP_TABLE + " AS d (idUser, project, day, seconds, entries) " +
+                    "SELECT idUser, project, CAST(start_time AS date), EXTRACT(EPOCH FROM (end_time - start_time)), 1 FROM stopped " +
+                    "ON CONFLICT (idUser, project, day) DO UPDATE SET seconds = d.seconds + EXCLUDED.seconds, entries = d.entries + EXCLUDED.entries" +
+                    ") " +
+                    // reading from stopped makes the old entry inactive before the new one is inserted
+                    "INSERT INTO " + TRACKING_TABLE + " (project, idUser, start_time, end_time, timezone, active) " +
+                    "SELECT t.id, ?, COALESCE((SELECT MAX(end_time) FROM stopped), CAST(clock_timestamp() AT TIME ZONE 'UTC' AS timestamp)), NULL, ?, true " +
+                    "FROM target t " +
+                    "RETURNING *")) {
+                statement.setInt(1, projectId);
+                statement.setInt(2, user);
+                statement.setInt(3, user);
+                statement.setInt(4, user);
+                statement.setInt(5, user);
+                statement.setInt(6, user);
+                statement.setString(7, timezone);
+                final ResultSet rs = statement.executeQuery();
+                started = rs.next() ? Optional.of(parseTracked(rs)) : Optional.empty();
+            }
+        }
+        if (started.isPresent()) {
+            ChangeBus.publish(Change.tracking(user));
+        }
+        return started;
+    }
+
+    public static boolean isUniqueViolation(final SQLException e) {
+        return "23505".equals(e.getSQLState());
     }
 
     public static boolean stopTracking(final int id, final int user) throws SQLException {
-        try (final Connection con = getConnection()) {
-            try (final PreparedStatement statement = con.prepareStatement("UPDATE "+ TRACKING_TABLE +" SET active = false, end_time = ? WHERE id = ? AND idUser = ? AND active = true")) {
+        final boolean stopped = inTransaction(con -> {
+            try (final PreparedStatement statement = con.prepareStatement("UPDATE "+ TRACKING_TABLE +" SET active = false, end_time = ? WHERE id = ? AND idUser = ? AND active = true " +
+                    "RETURNING idUser, project, start_time, end_time")) {
                 statement.setTimestamp(1, Timestamp.from(Instant.now()));
                 statement.setInt(2, id);
                 statement.setInt(3, user);
-                return statement.executeUpdate() > 0;
+                final ResultSet rs = statement.executeQuery();
+                if (rs.next()) {
+                    applyToRollup(con, rs, 1);
+                    return true;
+                }
+                return false;
             }
+        });
+        if (stopped) {
+            ChangeBus.publish(Change.tracking(user));
         }
+        return stopped;
     }
 
     public static boolean updateTracking(final Tracked tracked, final int userId) throws SQLException {
@@ -730,7 +1059,16 @@ public class Database {
             tracked.overrideUser(userId);
             return addTracking(tracked) > 0;
         }
-        try (final Connection con = getConnection()) {
+        final boolean updated = inTransaction(con -> {
+            try (final PreparedStatement previous = con.prepareStatement("SELECT idUser, project, start_time, end_time FROM " + TRACKING_TABLE + " WHERE id = ? AND idUser = ? FOR UPDATE")) {
+                previous.setInt(1, tracked.getId());
+                previous.setInt(2, userId);
+                final ResultSet rs = previous.executeQuery();
+                if (!rs.next()) {
+                    return false;
+                }
+                applyToRollup(con, rs, -1);
+            }
             try (final PreparedStatement statement = con.prepareStatement("UPDATE "+ TRACKING_TABLE +" SET start_time = ?," +
                     "end_time = ?, timezone = ?, active = ?, project = ? WHERE id = ? AND idUser = ?")) {
                 statement.setTimestamp(1, tracked.getStart());
@@ -740,7 +1078,302 @@ public class Database {
                 statement.setInt(5, tracked.getProjectId());
                 statement.setInt(6, tracked.getId());
                 statement.setInt(7, userId);
-                return statement.executeUpdate() > 0;
+                statement.executeUpdate();
+            }
+            applyToRollup(con, userId, tracked.getProjectId(), tracked.getStart(), tracked.getEnd(), 1);
+            return true;
+        });
+        if (updated) {
+            ChangeBus.publish(Change.tracking(userId));
+        }
+        return updated;
+    }
+
+    /**
+     * Applies creates, updates and deletes of finished entries of the user in one transaction. Project access and the
+     * entries to change are checked with one query each, every kind of write is then sent as a single batch together
+     * with the rollup deltas. The result has the outcome of each operation at its position; operations that fail the
+     * checks are skipped without affecting the others.
+     */
+    public static List<TrackingOperationResult> applyTrackingOperations(final int user, final List<TrackingOperation> operations) throws SQLException {
+        final TrackingOperationResult[] results = new TrackingOperationResult[operations.size()];
+        final Set<Integer> entryIds = new HashSet<>();
+        final Set<Integer> projectIds = new HashSet<>();
+        for (int i = 0; i < operations.size(); i++) {
+            final TrackingOperation operation = operations.get(i);
+            if (!isWellFormed(operation)) {
+                results[i] = new TrackingOperationResult(OperationStatus.INVALID, -1);
+            } else if (operation.action() != TrackingAction.CREATE && !entryIds.add(operation.entry().getId())) {
+                results[i] = new TrackingOperationResult(OperationStatus.CONFLICT, -1);
+            } else if (operation.action() != TrackingAction.DELETE) {
+                projectIds.add(operation.entry().getProjectId());
+            }
+        }
+        final boolean changed = inTransaction(con -> {
+            final Set<Integer> trackable = selectTrackableProjects(con, user, projectIds);
+            final Map<Integer, Tracked> existing = lockEntries(con, user, entryIds);
+            final List<Integer> created = new ArrayList<>();
+            try (final PreparedStatement delete = con.prepareStatement("DELETE FROM " + TRACKING_TABLE + " WHERE id = ? AND idUser = ?");
+                 final PreparedStatement update = con.prepareStatement("UPDATE " + TRACKING_TABLE + " SET start_time = ?, end_time = ?, timezone = ?, " +
+                         "active = false, project = ? WHERE id = ? AND idUser = ?");
+                 final PreparedStatement insert = con.prepareStatement("INSERT INTO " + TRACKING_TABLE + " (project, idUser, start_time, end_time, timezone, active) " +
+                         "VALUES(?,?,?,?,?,false)", new String[]{"id"});
+                 final PreparedStatement rollup = con.prepareStatement(ROLLUP_DELTA);
+                 final PreparedStatement cleanup = con.prepareStatement(ROLLUP_CLEANUP)) {
+                for (int i = 0; i < operations.size(); i++) {
+                    if (results[i] != null) {
+                        continue;
+                    }
+                    final Tracked entry = operations.get(i).entry();
+                    final Tracked previous = existing.get(entry.getId());
+                    switch (operations.get(i).action()) {
+                        case CREATE -> {
+                            if (!trackable.contains(entry.getProjectId())) {
+                                results[i] = new TrackingOperationResult(OperationStatus.FORBIDDEN, -1);
+                                continue;
+                            }
+                            insert.setInt(1, entry.getProjectId());
+                            insert.setInt(2, user);
+                            insert.setTimestamp(3, entry.getStart());
+                            insert.setTimestamp(4, entry.getEnd());
+                            insert.setString(5, entry.getTimezone());
+                            insert.addBatch();
+                            created.add(i);
+                        }
+                        case UPDATE -> {
+                            if (previous == null) {
+                                results[i] = new TrackingOperationResult(OperationStatus.NOT_FOUND, -1);
+                                continue;
+                            }
+                            if (!trackable.contains(entry.getProjectId())) {
+                                results[i] = new TrackingOperationResult(OperationStatus.FORBIDDEN, -1);
+                                continue;
+                            }
+                            update.setTimestamp(1, entry.getStart());
+                            update.setTimestamp(2, entry.getEnd());
+                            update.setString(3, entry.getTimezone());
+                            update.setInt(4, entry.getProjectId());
+                            update.setInt(5, entry.getId());
+                            update.setInt(6, user);
+                            update.addBatch();
+                            addRollupDelta(rollup, cleanup, previous, -1);
+                            results[i] = new TrackingOperationResult(OperationStatus.OK, entry.getId());
+                        }
+                        case DELETE -> {
+                            if (previous == null) {
+                                results[i] = new TrackingOperationResult(OperationStatus.NOT_FOUND, -1);
+                                continue;
+                            }
+                            delete.setInt(1, entry.getId());
+                            delete.setInt(2, user);
+                            delete.addBatch();
+                            addRollupDelta(rollup, cleanup, previous, -1);
+                            results[i] = new TrackingOperationResult(OperationStatus.OK, entry.getId());
+                            continue;
+                        }
+                    }
+                    addRollupDelta(rollup, cleanup, new Tracked(entry.getId(), user, entry.getProjectId(), entry.getStart(), entry.getEnd(), entry.getTimezone()), 1);
+                }
+                delete.executeBatch();
+                update.executeBatch();
+                insert.executeBatch();
+                final ResultSet keys = insert.getGeneratedKeys();
+                for (final int i : created) {
+                    if (!keys.next()) {
+                        throw new IllegalStateException("missing generated id for created tracking entry");
+                    }
+                    results[i] = new TrackingOperationResult(OperationStatus.OK, keys.getInt(1));
+                }
+                rollup.executeBatch();
+                cleanup.executeBatch();
+            }
+            return Arrays.stream(results).anyMatch(r -> r.status() == OperationStatus.OK);
+        });
+        if (changed) {
+            ChangeBus.publish(Change.tracking(user));
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Loads finished entries of the user, given as COPY text rows of project, start, end and timezone, into a staging
+     * table and adds those not tracked yet, matched by project and start, together with their rollup in one statement.
+     * Nothing is added if reading the rows fails. Returns the number of added entries.
+     */
+    public static int importTracking(final int user, final Reader rows) throws SQLException, IOException {
+        final int imported;
+        try (final Connection con = getConnection()) {
+            con.setAutoCommit(false);
+            try {
+                try (final Statement statement = con.createStatement()) {
+                    statement.execute("CREATE TEMPORARY TABLE tracking_import (project INTEGER NOT NULL, start_time TIMESTAMP NOT NULL, " +
+                            "end_time TIMESTAMP NOT NULL, timezone TEXT NOT NULL) ON COMMIT DROP");
+                }
+                Instrumentation.copyIn(con, "COPY tracking_import FROM STDIN", rows, IMPORT_BUFFER_SIZE);
+                try (final Statement statement = con.createStatement()) {
+                    // temporary tables have no statistics, without them the merge is planned for a handful of rows
+                    statement.execute("ANALYZE tracking_import");
+                }
+                try (final PreparedStatement statement = con.prepareStatement("WITH added AS (" +
+                        "INSERT INTO " + TRACKING_TABLE + " (project, idUser, start_time, end_time, timezone, active) " +
+                        "SELECT DISTINCT ON (i.project, i.start_time) i.project, ?, i.start_time, i.end_time, i.timezone, false " +
+                        "FROM tracking_import i WHERE NOT EXISTS (SELECT 1 FROM " + TRACKING_TABLE + " t " +
+                        "WHERE t.idUser = ? AND t.project = i.project AND t.start_time = i.start_time) " +
+                        "RETURNING idUser, project, start_time, end_time" +
+                        "), rolled AS (" +
+                        "INSERT INTO " + ROLLUP_TABLE + " AS d (idUser, project, day, seconds, entries) " +
+                        "SELECT idUser, project, CAST(start_time AS date), SUM(EXTRACT(EPOCH FROM (end_time - start_time))), COUNT(*) " +
+                        "FROM added GROUP BY 1, 2, 3 " +
+                        "ON CONFLICT (idUser, project, day) DO UPDATE SET seconds = d.seconds + EXCLUDED.seconds, entries = d.entries + EXCLUDED.entries" +
+                        ") SELECT COUNT(*) FROM added")) {
+                    statement.setInt(1, user);
+                    statement.setInt(2, user);
+                    final ResultSet rs = statement.executeQuery();
+                    imported = rs.next() ? rs.getInt(1) : 0;
+                }
+                con.commit();
+            } catch (final SQLException | IOException | RuntimeException e) {
+                con.rollback();
+                throw e;
+            }
+        }
+        if (imported > 0) {
+            ChangeBus.publish(Change.tracking(user));
+        }
+        return imported;
+    }
+
+    private static boolean isWellFormed(final TrackingOperation operation) {
+        if (operation == null || operation.action() == null || operation.entry() == null) {
+            return false;
+        }
+        if (operation.action() == TrackingAction.DELETE) {
+            return true;
+        }
+        // running entries are started and stopped through their own endpoints
+        final Tracked entry = operation.entry();
+        return entry.getStart() != null && entry.getEnd() != null && !entry.getEnd().before(entry.getStart()) && entry.getTimezone() != null;
+    }
+
+    private static Set<Integer> selectTrackableProjects(final Connection con, final int user, final Set<Integer> projectIds) throws SQLException {
+        final Set<Integer> res = new HashSet<>();
+        if (projectIds.isEmpty()) {
+            return res;
+        }
+        try (final PreparedStatement statement = con.prepareStatement("SELECT p.id FROM " + PROJECT_TABLE + " p WHERE p.id = ANY(?) AND " + TRACKABLE_PROJECT)) {
+            statement.setArray(1, con.createArrayOf("integer", projectIds.toArray()));
+            statement.setInt(2, user);
+            statement.setInt(3, user);
+            statement.setInt(4, user);
+            final ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                res.add(rs.getInt("id"));
+            }
+        }
+        return res;
+    }
+
+    private static Map<Integer, Tracked> lockEntries(final Connection con, final int user, final Set<Integer> ids) throws SQLException {
+        final Map<Integer, Tracked> res = new HashMap<>();
+        if (ids.isEmpty()) {
+            return res;
+        }
+        try (final PreparedStatement statement = con.prepareStatement("SELECT * FROM " + TRACKING_TABLE + " WHERE idUser = ? AND id = ANY(?) FOR UPDATE")) {
+            statement.setInt(1, user);
+            statement.setArray(2, con.createArrayOf("integer", ids.toArray()));
+            final ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                final Tracked tracked = parseTracked(rs);
+                res.put(tracked.getId(), tracked);
+            }
+            Instrumentation.rowsRead(statement, res.size());
+        }
+        return res;
+    }
+
+    private static void addRollupDelta(final PreparedStatement rollup, final PreparedStatement cleanup, final Tracked entry, final int sign) throws SQLException {
+        if (entry.getStart() == null || entry.getEnd() == null) {
+            return;
+        }
+        setRollupDelta(rollup, entry.getUser(), entry.getProjectId(), entry.getStart(), entry.getEnd(), sign);
+        rollup.addBatch();
+        if (sign < 0) {
+            setRollupCleanup(cleanup, entry.getUser(), entry.getProjectId(), entry.getStart());
+            cleanup.addBatch();
+        }
+    }
+
+    private static void applyToRollup(final Connection con, final ResultSet row, final int sign) throws SQLException {
+        applyToRollup(con, row.getInt("idUser"), row.getInt("project"), row.getTimestamp("start_time"), row.getTimestamp("end_time"), sign);
+    }
+
+    /**
+     * Adds ({@code sign} 1) or removes ({@code sign} -1) a tracking entry from the daily rollup inside the caller's transaction.
+     * Only finished entries are part of the rollup. Applying deltas keeps concurrent writers to the same day from losing updates.
+     */
+    private static void applyToRollup(final Connection con, final int user, final int project, final Timestamp start, final Timestamp end, final int sign) throws SQLException {
+        if (start == null || end == null) {
+            return;
+        }
+        try (final PreparedStatement statement = con.prepareStatement(ROLLUP_DELTA)) {
+            setRollupDelta(statement, user, project, start, end, sign);
+            statement.executeUpdate();
+        }
+        if (sign < 0) {
+            try (final PreparedStatement statement = con.prepareStatement(ROLLUP_CLEANUP)) {
+                setRollupCleanup(statement, user, project, start);
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    private static void setRollupDelta(final PreparedStatement statement, final int user, final int project, final Timestamp start, final Timestamp end, final int sign) throws SQLException {
+        statement.setInt(1, user);
+        statement.setInt(2, project);
+        statement.setTimestamp(3, start);
+        statement.setInt(4, sign);
+        statement.setTimestamp(5, end);
+        statement.setTimestamp(6, start);
+        statement.setInt(7, sign);
+    }
+
+    private static void setRollupCleanup(final PreparedStatement statement, final int user, final int project, final Timestamp start) throws SQLException {
+        statement.setInt(1, user);
+        statement.setInt(2, project);
+        statement.setTimestamp(3, start);
+    }
+
+    /**
+     * Recomputes the daily rollup from the tracking table. Writes to tracking wait until the rebuild is committed.
+     */
+    public static int rebuildTrackingRollup() throws SQLException {
+        final int rows = inTransaction(con -> {
+            try (final Statement st = con.createStatement()) {
+                st.execute("LOCK TABLE " + TRACKING_TABLE + " IN SHARE MODE");
+                st.executeUpdate("DELETE FROM " + ROLLUP_TABLE);
+                return st.executeUpdate("INSERT INTO " + ROLLUP_TABLE + " (idUser, project, day, seconds, entries) " +
+                        "SELECT idUser, project, CAST(start_time AS date), SUM(EXTRACT(EPOCH FROM (end_time - start_time))), COUNT(*) " +
+                        "FROM " + TRACKING_TABLE + " WHERE end_time IS NOT NULL AND idUser IS NOT NULL AND project IS NOT NULL GROUP BY 1, 2, 3");
+            }
+        });
+        ChangeBus.publish(Change.shared());
+        return rows;
+    }
+
+    private interface Transaction<T> {
+        T run(Connection con) throws SQLException;
+    }
+
+    private static <T> T inTransaction(final Transaction<T> work) throws SQLException {
+        try (final Connection con = getConnection()) {
+            con.setAutoCommit(false);
+            try {
+                final T result = work.run(con);
+                con.commit();
+                return result;
+            } catch (final SQLException | RuntimeException e) {
+                con.rollback();
+                throw e;
             }
         }
     }
@@ -749,7 +1382,11 @@ public class Database {
         try (final Connection con = getConnection()) {
             try (final PreparedStatement statement = con.prepareStatement("DELETE FROM " + USERS_TABLE + " WHERE id = ?")) {
                 statement.setInt(1, idToDelete);
-                return statement.executeUpdate() > 0;
+                final boolean deleted = statement.executeUpdate() > 0;
+                if (deleted) {
+                    ChangeBus.publish(Change.userDeleted(idToDelete));
+                }
+                return deleted;
             }
         }
     }
@@ -765,6 +1402,7 @@ public class Database {
                 if (rs.next()) {
                     final int userId = rs.getInt(1);
                     setNewUserRole(userId, user.roles());
+                    ChangeBus.publish(Change.shared());
                     return userId > 0;
                 }
             }
@@ -780,44 +1418,118 @@ public class Database {
                     statement.setString(2, role.name());
                     statement.addBatch();
                 }
-                return statement.executeUpdate() > 0;
+                final boolean res = statement.executeUpdate() > 0;
+                if (res) {
+                    ChangeBus.publish(Change.shared());
+                }
+                return res;
             }
         }
     }
 
+    /**
+     * Replaces the user's roles and bumps the role version in one transaction, so sessions issued with the old roles
+     * stop being accepted exactly when the new roles are visible.
+     */
     public static boolean updateUserRole(final int userId, final List<Role> roles) throws SQLException {
-        final List<Role> currentRoles = Database.getUserRoles(userId);
-        final List<Role> toDel = currentRoles.stream().filter(o -> !roles.contains(o)).toList();
-        final List<Role> toAdd = roles.stream().filter(n -> !currentRoles.contains(n)).toList();
-        return (deleteRoles(userId, toDel) && addRoles(userId, toAdd));
+        final RoleUpdate update = inTransaction(con -> {
+            final List<Role> currentRoles = getUserRolesForUpdate(con, userId);
+            final List<Role> toDel = currentRoles.stream().filter(o -> !roles.contains(o)).toList();
+            final List<Role> toAdd = roles.stream().filter(n -> !currentRoles.contains(n)).toList();
+            final boolean updated = deleteRoles(con, userId, toDel) && addRoles(con, userId, toAdd);
+            final int version = toDel.isEmpty() && toAdd.isEmpty() ? 0 : bumpRoleVersion(con, userId);
+            return new RoleUpdate(updated, version);
+        });
+        if (update.version() > 0) {
+            ChangeBus.publish(Change.roles(userId, update.version()));
+        }
+        return update.updated();
+    }
+
+    // version is the bumped role version, 0 when the roles stayed the same
+    private record RoleUpdate(boolean updated, int version) {
     }
 
-    private static boolean deleteRoles(final int userID, final List<Role> roles) throws SQLException {
+    public static int getRoleVersion(final int userId) throws SQLException {
         try (final Connection con = getConnection()) {
-            try (final PreparedStatement statement = con.prepareStatement("DELETE FROM " + ROLE_TABLE + " WHERE idUser = ? and roleType = ?")) {
-                for (final Role role: roles) {
-                    statement.setInt(1, userID);
-                    statement.setString(2, role.name());
-                    statement.addBatch();
+            try (final PreparedStatement statement = con.prepareStatement("SELECT role_version FROM " + USERS_TABLE + " WHERE id = ?")) {
+                statement.setInt(1, userId);
+                final ResultSet rs = statement.executeQuery();
+                if (rs.next()) {
+                    return rs.getInt("role_version");
                 }
-                return isSuccess(statement.executeBatch());
+                return 0;
             }
         }
     }
 
-    private static boolean addRoles(final int userID, final List<Role> roles) throws SQLException {
+    public static RoleClaims getRoleClaims(final int userId) throws SQLException {
         try (final Connection con = getConnection()) {
-            try (final PreparedStatement statement = con.prepareStatement("INSERT INTO " + ROLE_TABLE + " (user,roleType) VALUES(?,?)")) {
-                for (final Role role: roles) {
-                    statement.setInt(1, userID);
-                    statement.setString(2, role.name());
-                    statement.addBatch();
+            try (final PreparedStatement statement = con.prepareStatement("SELECT DISTINCT u.role_version, r.roleType FROM " + USERS_TABLE + " u " +
+                    "LEFT JOIN " + ROLE_TABLE + " r ON r.idUser = u.id WHERE u.id = ?")) {
+                statement.setInt(1, userId);
+                final ResultSet rs = statement.executeQuery();
+                final List<Role> roles = new ArrayList<>();
+                int version = 0;
+                while (rs.next()) {
+                    version = rs.getInt("role_version");
+                    final String role = rs.getString("roleType");
+                    if (role != null) {
+                        roles.add(Role.valueOf(role));
+                    }
                 }
-                return isSuccess(statement.executeBatch());
+                return new RoleClaims(roles, version);
             }
         }
     }
 
+    // locks the user row first, so concurrent updates of the same user's roles run one after the other
+    private static List<Role> getUserRolesForUpdate(final Connection con, final int userId) throws SQLException {
+        try (final PreparedStatement statement = con.prepareStatement("SELECT id FROM " + USERS_TABLE + " WHERE id = ? FOR UPDATE")) {
+            statement.setInt(1, userId);
+            statement.executeQuery().close();
+        }
+        final List<Role> roles = new ArrayList<>();
+        try (final PreparedStatement statement = con.prepareStatement("SELECT DISTINCT roleType FROM " + ROLE_TABLE + " WHERE idUser = ?")) {
+            statement.setInt(1, userId);
+            final ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                roles.add(Role.valueOf(rs.getString("roleType")));
+            }
+            return roles;
+        }
+    }
+
+    private static int bumpRoleVersion(final Connection con, final int userId) throws SQLException {
+        try (final PreparedStatement statement = con.prepareStatement("UPDATE " + USERS_TABLE + " SET role_version = role_version + 1 WHERE id = ? RETURNING role_version")) {
+            statement.setInt(1, userId);
+            final ResultSet rs = statement.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static boolean deleteRoles(final Connection con, final int userID, final List<Role> roles) throws SQLException {
+        try (final PreparedStatement statement = con.prepareStatement("DELETE FROM " + ROLE_TABLE + " WHERE idUser = ? and roleType = ?")) {
+            for (final Role role: roles) {
+                statement.setInt(1, userID);
+                statement.setString(2, role.name());
+                statement.addBatch();
+            }
+            return isSuccess(statement.executeBatch());
+        }
+    }
+
+    private static boolean addRoles(final Connection con, final int userID, final List<Role> roles) throws SQLException {
+        try (final PreparedStatement statement = con.prepareStatement("INSERT INTO " + ROLE_TABLE + "(idUser, roleType) VALUES(?,?)")) {
+            for (final Role role: roles) {
+                statement.setInt(1, userID);
+                statement.setString(2, role.name());
+                statement.addBatch();
+            }
+            return isSuccess(statement.executeBatch());
+        }
+    }
+
     public static int addAdminUser(final String username, final String hash) throws SQLException {
         try (final Connection con = getConnection()) {
             try (final PreparedStatement statement = con.prepareStatement("INSERT INTO " + USERS_TABLE + "(email, hash) VALUES(?,?)", Statement.RETURN_GENERATED_KEYS)) {
@@ -826,6 +1538,7 @@ public class Database {
                 statement.executeUpdate();
                 final ResultSet rs = statement.getGeneratedKeys();
                 if (rs.next()) {
+                    ChangeBus.publish(Change.shared());
                     return rs.getInt(1);
                 }
                 return -1;
@@ -838,7 +1551,11 @@ public class Database {
             try (final PreparedStatement statement = con.prepareStatement("INSERT INTO " + ROLE_TABLE + "(idUser, roleType) VALUES(?,?)")) {
                 statement.setInt(1, userID);
                 statement.setString(2, Role.ADMIN.name());
-                return statement.executeUpdate() > 0;
+                final boolean res = statement.executeUpdate() > 0;
+                if (res) {
+                    ChangeBus.publish(Change.shared());
+                }
+                return res;
             }
         }
     }
@@ -848,7 +1565,7 @@ public class Database {
         try (final Connection con = getConnection()){
             try (final PreparedStatement statement = con.prepareStatement("INSERT INTO " + TOKEN_TABLE + "(idUser,token,token_type,expiration,description) VALUES(?,?,?,?,?)")) {
                 statement.setInt(1,userId);
-                statement.setString(2, token);
+                statement.setString(2, Util.sha256(token));
                 statement.setTimestamp(4, expiration);
                 statement.setInt(3,2);
                 statement.setString(5, "");
@@ -860,7 +1577,7 @@ public class Database {
     public static Optional<UserToken> getToken(final String token) throws SQLException{
         try (final Connection con = getConnection()){
             try (final PreparedStatement statement = con.prepareStatement("SELECT * FROM " + TOKEN_TABLE + " WHERE token = ?")) {
-                statement.setString(1, token);
+                statement.setString(1, Util.sha256(token));
                 final ResultSet rs = statement.executeQuery();
                 if (rs.next()) {
                     return Optional.of(parseToken(rs));
@@ -893,7 +1610,11 @@ public class Database {
             try (final PreparedStatement statement = con.prepareStatement("DELETE FROM " + TOKEN_TABLE + " WHERE idUser = ? AND id = ?")) {
                 statement.setInt(1, userId);
                 statement.setInt(2, tokenId);
-                return statement.executeUpdate() > 0;
+                final boolean deleted = statement.executeUpdate() > 0;
+                if (deleted) {
+                    ChangeBus.publish(Change.tokens(userId));
+                }
+                return deleted;
             }
         }
     }
@@ -902,8 +1623,12 @@ public class Database {
         try (final Connection con = getConnection()) {
             try (final PreparedStatement statement = con.prepareStatement("DELETE FROM " + TOKEN_TABLE + " WHERE idUser = ? AND token = ?")) {
                 statement.setInt(1, userId);
-                statement.setString(2, token);
-                return statement.executeUpdate() > 0;
+                statement.setString(2, Util.sha256(token));
+                final boolean res = statement.executeUpdate() > 0;
+                if (res) {
+                    ChangeBus.publish(Change.tokens(userId));
+                }
+                return res;
             }
         }
     }
@@ -922,12 +1647,16 @@ public class Database {
         try (final Connection con = getConnection()) {
             try (final PreparedStatement statement = con.prepareStatement("INSERT INTO " + TOKEN_TABLE + "(idUser, token, token_type, description, expiration) VALUES(?,?,?,?,?)")) {
                 statement.setInt(1, userId);
-                statement.setString(2, token);
+                statement.setString(2, Util.sha256(token));
                 statement.setInt(3, TokenType.API_TOKEN.getId());
                 statement.setString(4, description);
                 // If expiration is not present, set it to null
                 statement.setTimestamp(5, expiration.orElse(null));
-                return statement.executeUpdate() > 0;
+                final boolean res = statement.executeUpdate() > 0;
+                if (res) {
+                    ChangeBus.publish(Change.user(userId));
+                }
+                return res;
             }
         }
     }
@@ -936,7 +1665,7 @@ public class Database {
         try (final Connection con = getConnection()) {
             try (final PreparedStatement statement = con.prepareStatement("INSERT INTO " + TOKEN_TABLE + "(idUser, token, token_type, description, expiration) VALUES(?,?,?,?,?)")) {
                 statement.setInt(1, userId);
-                statement.setString(2, token);
+                statement.setString(2, Util.sha256(token));
                 statement.setInt(3, TokenType.REFRESH_TOKEN.getId());
                 statement.setString(4, "");
                 // If expiration is not present, set it to null
@@ -946,6 +1675,19 @@ public class Database {
         }
     }
 
+    /**
+     * Sends all payloads on the channel in one statement, they are delivered to the listeners as separate notifications.
+     */
+    public static void notifyChanges(final String channel, final List<String> payloads) throws SQLException {
+        try (final Connection con = getConnection()) {
+            try (final PreparedStatement statement = con.prepareStatement("SELECT pg_notify(?, payload) FROM unnest(?) AS payload")) {
+                statement.setString(1, channel);
+                statement.setArray(2, con.createArrayOf("text", payloads.toArray()));
+                statement.execute();
+            }
+        }
+    }
+
     public static void initDataBase() throws SQLException {
         final String createUserTable = "CREATE TABLE IF NOT EXISTS " + USERS_TABLE + " " +
                 "(" +
@@ -1013,6 +1755,7 @@ public class Database {
                 st.execute(createTrackedTable);
                 st.execute(createTokenTable);
             }
+            Migrations.migrate(con);
         }
         setAdminIfNotExists();
     }
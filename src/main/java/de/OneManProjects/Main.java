@@ -30,16 +30,25 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import de.OneManProjects.api.Admins;
+import de.OneManProjects.api.Assets;
 import de.OneManProjects.api.Groups;
 import de.OneManProjects.api.Responses;
 import de.OneManProjects.api.Users;
 import de.OneManProjects.data.dto.*;
+import de.OneManProjects.database.DatabaseConfig;
+import de.OneManProjects.events.ChangeBus;
 import de.OneManProjects.mail.Mail;
+import de.OneManProjects.metrics.Metrics;
+import de.OneManProjects.metrics.PrometheusText;
+import de.OneManProjects.metrics.RequestEvent;
 import de.OneManProjects.security.Auth;
+import de.OneManProjects.security.Principal;
 import de.OneManProjects.security.UserToken;
 import de.OneManProjects.utils.OptionalTypeAdapter;
 import de.OneManProjects.utils.Util;
 import io.javalin.Javalin;
+import io.javalin.compression.CompressionStrategy;
+import io.javalin.compression.Gzip;
 import io.javalin.http.*;
 import io.javalin.http.ContentType;
 import io.javalin.http.staticfiles.Location;
@@ -64,6 +73,7 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 
 import static de.OneManProjects.api.Admins.PRIVACY_HTML;
 
@@ -79,7 +89,21 @@ public class Main {
         final boolean DEBUG = Boolean.getBoolean("debug");
 
         try{
+            final DatabaseConfig dbConfig = DatabaseConfig.fromEnv();
+            Database.configure(dbConfig);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                ChangeBus.stop();
+                Database.shutdown();
+            }));
             Database.initDataBase();
+            if (Arrays.asList(args).contains("rebuild-rollup")) {
+                final int rows = Database.rebuildTrackingRollup();
+                logger.info("rebuilt tracking rollup with {} rows", rows);
+                return;
+            }
+            if (Util.getEnvVar("CHANGE_BUS_ENABLED", Boolean::parseBoolean, false).orElse(true)) {
+                ChangeBus.start(dbConfig);
+            }
         } catch (final SQLException e) {
             System.out.println(e.getMessage());
             System.exit(2);
@@ -89,8 +113,8 @@ public class Main {
         app.start(port.orElse(3001));
     }
 
-    public static Javalin createJavalinApp(final boolean DEBUG, final Optional<String> AppUrl) {
-        final Gson gson = new GsonBuilder()
+    static Gson createGson() {
+        return new GsonBuilder()
         .registerTypeAdapter(
                 new TypeToken<Optional<Timestamp>>() {}.getType(),
                 new OptionalTypeAdapter<>(new Gson().getAdapter(Timestamp.class))
@@ -104,6 +128,10 @@ public class Main {
                         new OptionalTypeAdapter<>(new Gson().getAdapter(String.class))
                 )
         .create();
+    }
+
+    public static Javalin createJavalinApp(final boolean DEBUG, final Optional<String> AppUrl) {
+        final Gson gson = createGson();
         final JsonMapper gsonMapper = new JsonMapper() {
             @NotNull
             @Override
@@ -118,7 +146,15 @@ public class Main {
             }
         };
 
+        final boolean virtualThreads = Util.getEnvVar("USE_VIRTUAL_THREADS", Boolean::parseBoolean, false).orElse(false);
+        // gzip only, brotli would need the glibc build of brotli4j which does not load on the alpine image,
+        // the hashed frontend assets are served brotli compressed from the build anyway
+        final CompressionStrategy compression = new CompressionStrategy(null, new Gzip(6));
+        compression.setDefaultMinSizeForCompression(Util.getEnvVar("COMPRESSION_MIN_SIZE", Integer::parseInt, false).orElse(1024));
         final Javalin app = Javalin.create(config -> {
+            config.useVirtualThreads = virtualThreads;
+            config.http.customCompression(compression);
+            config.requestLogger.http(Metrics::requestFinished);
             config.bundledPlugins.enableCors(cors -> {
                 cors.addRule(it -> {
                     if (DEBUG) {
@@ -141,6 +177,8 @@ public class Main {
                 staticFiles.location = Location.CLASSPATH;
                 staticFiles.directory = "/frontend";
                 staticFiles.mimeTypes.add(ContentType.TEXT_JS);
+                // index.html points at the hashed bundle, it has to be revalidated after every deployment
+                staticFiles.headers = Map.of(Header.CACHE_CONTROL, "no-cache");
             });
             config.spaRoot.addFile("/", "/frontend/index.html", Location.CLASSPATH);
         });
@@ -156,6 +194,14 @@ public class Main {
             ctx.header("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
         });
 
+        app.beforeMatched(Metrics::requestMatched);
+        app.afterMatched(Metrics::requestHandled);
+
+        app.get("assets/{file}", Assets::serve);
+        // scrapers use /metrics with the token, the session cookies of admins are only sent below /api
+        app.get("metrics", ctx -> runAction(ctx, Main::metrics, false));
+        app.get("api/metrics", ctx -> runAction(ctx, Main::metrics, false));
+
         app.post("api/login", ctx -> runAction(ctx, Main::login, false));
         app.post("api/logout", ctx -> runAction(ctx, Main::logout, false));
         app.post("api/login/reset", ctx -> runAction(ctx, Main::sendResetPasswordLink, false));
@@ -165,15 +211,19 @@ public class Main {
 
         app.post("api/start", ctx -> runAction(ctx, Users::startTracking, true));
         app.post("api/stop", ctx -> runAction(ctx, Users::stopTracking, true));
+        app.post("api/switch", ctx -> runAction(ctx, Users::switchTracking, true));
         app.post("api/add", ctx -> runAction(ctx, Users::addPersonalProject, true));
         app.post("api/active", ctx -> runAction(ctx, Users::getActive, true));
         app.post("api/month", ctx -> runAction(ctx, Users::getMonth, true));
         app.post("api/deleteProject", ctx -> runAction(ctx, Users::deleteUserProject, true));
         app.post("api/data", ctx -> runAction(ctx, Users::getDataToAnalyse, true));
+        app.post("api/series", ctx -> runAction(ctx, Users::getSeries, true));
         app.post("api/delete", ctx -> runAction(ctx, Users::deleteTracking, true));
         app.post("api/edit", ctx -> runAction(ctx, Users::updateProject, true));
         app.post("api/update", ctx -> runAction(ctx, Users::updateTracking, true));
+        app.post("api/bulk", ctx -> runAction(ctx, Users::bulkTracking, true));
         app.post("api/export", ctx -> runAction(ctx, Users::exportData, true));
+        app.post("api/import", ctx -> runAction(ctx, Users::importData, true));
         app.post("api/archive", ctx -> runAction(ctx, Users::archiveProject, true));
         app.post("api/user/updatePassword", ctx -> runAction(ctx, Users::updatePassword, true));
         app.post("api/user/changeMail", ctx -> runAction(ctx, Users::updateUserMail, true));
@@ -186,6 +236,13 @@ public class Main {
         app.get("api/user/data", ctx -> runAction(ctx, Users::getUserData, true));
         app.get("api/user/delete", ctx -> runAction(ctx, Users::deleteAccount, true));
         app.get("api/user/listTokens", ctx -> runAction(ctx, Users::getUserTokens, true));
+        // the stream is opened before the handler runs, so authentication has to fail in a before handler
+        app.before("api/events", ctx -> {
+            if (!Auth.validateToken(ctx)) {
+                throw new UnauthorizedResponse();
+            }
+        });
+        app.sse("api/events", Users::subscribeEvents);
 
         app.post("api/group/create", ctx -> runAction(ctx, Groups::groupUserCreateGroup, true));
         app.post("api/group/update", ctx -> runAction(ctx, Groups::groupUpdate, true));
@@ -196,6 +253,7 @@ public class Main {
         app.post("api/group/deleteGroup", ctx -> runAction(ctx, Groups::groupDelete, true));
         app.post("api/group/details", ctx -> runAction(ctx, Groups::getGroupDetails, true));
         app.post("api/group/data", ctx -> runAction(ctx, Groups::getGroupDataToAnalyse, true));
+        app.post("api/group/series", ctx -> runAction(ctx, Groups::getGroupSeries, true));
         app.post("api/group/export", ctx -> runAction(ctx, Groups::exportData, true));
         app.get("api/group", ctx -> runAction(ctx, Groups::getManagedGroups, true));
 
@@ -396,20 +454,42 @@ public class Main {
         Responses.setResponseOrError(ctx, Util.getVersionInfo());
     }
 
-    private static void runAction(final Context ctx, final Action func, final boolean authRequired){
-        if (authRequired) {
-            if (!Auth.validateToken(ctx)) {
-                ctx.status(HttpStatus.UNAUTHORIZED);
-                return;
-            }
+    private static void metrics(final Context ctx) throws SQLException {
+        if (!Metrics.isScrapeToken(ctx.header(Header.AUTHORIZATION)) && !Auth.isUserAdmin(ctx)) {
+            ctx.status(HttpStatus.UNAUTHORIZED);
+            return;
         }
+        ctx.contentType(PrometheusText.CONTENT_TYPE);
+        ctx.result(Metrics.scrape());
+    }
+
+    private static void runAction(final Context ctx, final Action func, final boolean authRequired){
+        final RequestEvent event = new RequestEvent();
+        event.begin();
         try {
+            if (authRequired) {
+                if (!Auth.validateToken(ctx)) {
+                    ctx.status(HttpStatus.UNAUTHORIZED);
+                    return;
+                }
+            }
             func.run(ctx);
+        } catch (final RejectedExecutionException e) {
+            logger.warn("for path: {} rejected: {}", ctx.path(), e.getMessage());
+            ctx.header(Header.RETRY_AFTER, "1");
+            ctx.status(HttpStatus.SERVICE_UNAVAILABLE);
         } catch (final Exception e) {
             logger.error("for path: {}", ctx.path(), e);
             ctx.status(500);
-            System.out.println(ctx.contextPath());
-            System.out.println(e.getMessage());
+        } finally {
+            if (event.shouldCommit()) {
+                final Principal principal = ctx.attribute(Auth.PRINCIPAL_ATTRIBUTE);
+                event.method = ctx.method().name();
+                event.route = ctx.endpointHandlerPath();
+                event.userId = principal != null ? principal.getUserId() : -1;
+                event.status = ctx.statusCode();
+                event.commit();
+            }
         }
     }
 
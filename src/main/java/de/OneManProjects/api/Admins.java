@@ -142,6 +142,9 @@ public class Admins {
     )
     public static void getAdminData(final Context ctx) throws SQLException {
         if (Auth.isUserAdmin(ctx)) {
+            if (Responses.isNotModified(ctx, Auth.getUserFromContext(ctx))) {
+                return;
+            }
             Responses.setResponseOrError(ctx, Optional.of(new AdminData(Database.getAllUsers(), Database.getAllGroups(), new ArrayList<>())), false);
         } else {
             ctx.status(HttpStatus.FORBIDDEN);
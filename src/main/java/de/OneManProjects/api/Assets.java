@@ -0,0 +1,102 @@
+package de.OneManProjects.api;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import io.javalin.http.ContentType;
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.NotFoundResponse;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves the hashed frontend bundle. The build writes .br and .gz files next to each asset,
+ * the variant is picked by Accept-Encoding so nothing is compressed per request.
+ */
+public class Assets {
+
+    private static final String ASSET_DIRECTORY = "/frontend/assets/";
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final List<String> ENCODINGS = List.of("br", "gzip");
+    private static final Map<String, String> FILE_SUFFIXES = Map.of("br", ".br", "gzip", ".gz");
+    private static final Map<String, Optional<String>> VARIANTS = new ConcurrentHashMap<>();
+
+    public static void serve(final Context ctx) {
+        final String file = ctx.pathParam("file");
+        if (file.contains("..") || Assets.class.getResource(ASSET_DIRECTORY + file) == null) {
+            throw new NotFoundResponse();
+        }
+        final String acceptEncoding = ctx.header(Header.ACCEPT_ENCODING);
+        String resource = ASSET_DIRECTORY + file;
+        for (final String encoding : ENCODINGS) {
+            final Optional<String> variant = variant(file, encoding);
+            if (variant.isPresent() && accepts(acceptEncoding, encoding)) {
+                ctx.header(Header.CONTENT_ENCODING, encoding);
+                resource = variant.get();
+                break;
+            }
+        }
+        final String extension = file.substring(file.lastIndexOf('.') + 1);
+        final ContentType type = ContentType.getContentTypeByExtension(extension);
+        ctx.contentType(type != null ? type.getMimeType() : ContentType.OCTET_STREAM);
+        ctx.header(Header.VARY, Header.ACCEPT_ENCODING);
+        ctx.header(Header.CACHE_CONTROL, IMMUTABLE);
+        final InputStream content = Assets.class.getResourceAsStream(resource);
+        ctx.result(content);
+    }
+
+    private static Optional<String> variant(final String file, final String encoding) {
+        final String resource = ASSET_DIRECTORY + file + FILE_SUFFIXES.get(encoding);
+        return VARIANTS.computeIfAbsent(resource, r -> Optional.ofNullable(Assets.class.getResource(r)).map(url -> r));
+    }
+
+    /**
+     * True when the Accept-Encoding header lists the encoding without a zero quality.
+     */
+    static boolean accepts(final String acceptEncoding, final String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (final String part : acceptEncoding.split(",")) {
+            final String[] params = part.trim().split(";");
+            final String name = params[0].trim();
+            if (name.equalsIgnoreCase(encoding) || name.equals("*")) {
+                for (int i = 1; i < params.length; i++) {
+                    if (params[i].trim().matches("q=0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -32,6 +32,7 @@ import de.OneManProjects.data.Project;
 import de.OneManProjects.data.Tracked;
 import de.OneManProjects.data.User;
 import de.OneManProjects.data.dto.*;
+import de.OneManProjects.database.TrackingFilter;
 import de.OneManProjects.export.Exporter;
 import de.OneManProjects.mail.Mail;
 import de.OneManProjects.security.Auth;
@@ -108,19 +109,18 @@ public class Groups {
                     @OpenApiResponse(status = "403", description = "FORBIDDEN")
             }
     )
-    public static void exportData(final Context ctx) throws SQLException {
+    public static void exportData(final Context ctx) throws SQLException, IOException {
         if (Auth.isUserGroup(ctx)) {
             final ExportFilter filter = ctx.bodyAsClass(ExportFilter.class);
             if (filter.groupId().isPresent()) {
                 final int userId = Auth.getUserFromContext(ctx);
                 final Optional<Group> group = Database.getGroup(filter.groupId().get(), userId);
                 if (group.isPresent()) {
-                    final byte[] data = Exporter.exportGroupData(filter, group.get().getId());
                     final String fileName = getExportFilename(filter.filter(), group.get().getTitle());
                     ctx.header("export", fileName);
                     ctx.header("Content-Disposition", "attachment; filename=" + fileName);
                     ctx.contentType("text/csv");
-                    ctx.result(data);
+                    Exporter.exportGroupData(filter, group.get().getId(), ctx.outputStream());
                 }
             }
         } else {
@@ -152,6 +152,7 @@ public class Groups {
                 if (group.isPresent() && group.get().getOwner() == userId) {
                     final List<Project> groupProjects = Database.getGroupProjects(filter.groupId().get(), true);
                     final List<Integer> groupProjectIds = groupProjects.stream().map(Project::getId).toList();
+                    // raw entries like the user analysis, the charts bucket them by the browser's local day
                     final List<Tracked> tracked = Database.getGroupTrackedForRange(groupProjectIds, Instant.parse(filter.start()), Instant.parse(filter.end()));
                     Responses.setResponseOrError(ctx, new AnalysisData(new ArrayList<>(), groupProjects, tracked));
                 }
@@ -162,6 +163,51 @@ public class Groups {
         }
     }
 
+    @OpenApi(
+            summary = "Get aggregated Group Series",
+            operationId = "group series",
+            path = "/api/group/series",
+            methods = HttpMethod.POST,
+            requestBody = @OpenApiRequestBody(
+                    content = {@OpenApiContent(from = SeriesFilter.class)},
+                    description = "Series filter with GroupID set",
+                    required = true
+            ),
+            responses = {
+                    @OpenApiResponse(status = "200", content = @OpenApiContent(from = SeriesData.class)),
+                    @OpenApiResponse(status = "400", description = "BAD_REQUEST"),
+                    @OpenApiResponse(status = "403", description = "FORBIDDEN")
+            }
+    )
+    public static void getGroupSeries(final Context ctx) throws SQLException {
+        if (Auth.isUserGroup(ctx)) {
+            final int userId = Auth.getUserFromContext(ctx);
+            final SeriesFilter filter = ctx.bodyAsClass(SeriesFilter.class);
+            final Optional<String> invalid = Series.validate(filter);
+            if (invalid.isPresent()) {
+                Responses.setBadRequest(ctx, invalid.get());
+                return;
+            }
+            if (filter.groupId().isEmpty()) {
+                Responses.setBadRequest(ctx, "groupId is required");
+                return;
+            }
+            // only finds groups the user owns
+            if (Database.getGroup(filter.groupId().get(), userId).isEmpty()) {
+                ctx.status(HttpStatus.FORBIDDEN);
+                return;
+            }
+            final List<Project> groupProjects = Database.getGroupProjects(filter.groupId().get(), true);
+            final List<Integer> groupProjectIds = groupProjects.stream().map(Project::getId).toList();
+            // an empty project filter would select every project
+            final List<SeriesPoint> series = groupProjectIds.isEmpty() ? List.of()
+                    : Series.load(TrackingFilter.forProjects(groupProjectIds, Instant.parse(filter.start()), Instant.parse(filter.end())), filter);
+            Responses.setResponseOrError(ctx, new SeriesData(new ArrayList<>(), groupProjects, Series.users(series, filter), series));
+        } else {
+            ctx.status(HttpStatus.FORBIDDEN);
+        }
+    }
+
     @OpenApi(
         summary = "Create New Group",
         operationId = "group create",
@@ -392,6 +438,9 @@ public class Groups {
     public static void getManagedGroups(final Context ctx) throws SQLException {
         if (Auth.isUserGroup(ctx)) {
             final int userId = Auth.getUserFromContext(ctx);
+            if (Responses.isNotModified(ctx, userId)) {
+                return;
+            }
             final List<de.OneManProjects.data.Group> groups = Database.getManagedGroups(userId);
             Responses.setResponseOrError(ctx, groups);
         } else {
@@ -27,9 +27,12 @@ package de.OneManProjects.api;
  */
 
 import de.OneManProjects.data.dto.Response;
+import de.OneManProjects.database.ResourceVersions;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
 import io.javalin.http.HttpStatus;
 
+import java.util.Arrays;
 import java.util.Optional;
 
 public class Responses {
@@ -51,6 +54,29 @@ public class Responses {
         }
     }
 
+    /**
+     * Tags the response with the user's current data version and answers 304 when the client already has that version.
+     * Call it before loading any data. Returns true when the response is complete.
+     */
+    public static boolean isNotModified(final Context ctx, final int userId) {
+        final String etag = ResourceVersions.etag(userId);
+        ctx.header(Header.ETAG, etag);
+        ctx.header(Header.CACHE_CONTROL, "private, no-cache");
+        final String ifNoneMatch = ctx.header(Header.IF_NONE_MATCH);
+        if (ifNoneMatch != null && matches(ifNoneMatch, etag)) {
+            ctx.status(HttpStatus.NOT_MODIFIED);
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean matches(final String ifNoneMatch, final String etag) {
+        final String opaque = etag.replaceFirst("^W/", "");
+        return Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .anyMatch(tag -> tag.equals("*") || tag.replaceFirst("^W/", "").equals(opaque));
+    }
+
     public static void setBadRequest(final Context ctx, final String message) {
         ctx.status(HttpStatus.BAD_REQUEST);
         final Response response = new Response(message);
@@ -0,0 +1,133 @@
+package de.OneManProjects.api;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import de.OneManProjects.Database;
+import de.OneManProjects.data.dto.SeriesFilter;
+import de.OneManProjects.data.dto.SeriesPoint;
+import de.OneManProjects.data.enums.SeriesBucket;
+import de.OneManProjects.data.enums.SeriesGroupBy;
+import de.OneManProjects.database.TrackedTotal;
+import de.OneManProjects.database.TrackingDimension;
+import de.OneManProjects.database.TrackingFilter;
+
+import java.sql.SQLException;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Shared parts of the user and group series endpoints.
+ */
+final class Series {
+
+    // an hourly series may span 31 days, the other buckets a comparable number of points
+    private static final long MAX_BUCKETS = 744;
+
+    private Series() {
+    }
+
+    /**
+     * Only region ids like Europe/Berlin and UTC are accepted. PostgreSQL reads bare offsets like +02:00 with the POSIX
+     * sign convention, which is inverted.
+     */
+    static Optional<ZoneId> parseZone(final String timezone) {
+        if (timezone == null) {
+            return Optional.of(ZoneOffset.UTC);
+        }
+        try {
+            final ZoneId zone = ZoneId.of(timezone);
+            if (zone instanceof ZoneOffset && !zone.equals(ZoneOffset.UTC)) {
+                return Optional.empty();
+            }
+            return Optional.of(zone);
+        } catch (final DateTimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    static Optional<String> validate(final SeriesFilter filter) {
+        if (filter.bucket() == null || filter.groupBy() == null) {
+            return Optional.of("bucket and groupBy are required");
+        }
+        if (parseZone(filter.timezone()).isEmpty()) {
+            return Optional.of("unknown timezone " + filter.timezone());
+        }
+        final Instant start;
+        final Instant end;
+        try {
+            start = Instant.parse(filter.start());
+            end = Instant.parse(filter.end());
+        } catch (final DateTimeException | NullPointerException e) {
+            return Optional.of("start and end have to be ISO-8601 instants");
+        }
+        if (!start.isBefore(end)) {
+            return Optional.of("start has to be before end");
+        }
+        if (Duration.between(start, end).dividedBy(bucketLength(filter.bucket())) > MAX_BUCKETS) {
+            return Optional.of("the range is too long for " + filter.bucket() + " buckets, at most " + MAX_BUCKETS + " are returned");
+        }
+        return Optional.empty();
+    }
+
+    // the shortest a bucket can be, so the estimate never undercounts
+    private static Duration bucketLength(final SeriesBucket bucket) {
+        return switch (bucket) {
+            case HOUR -> Duration.ofHours(1);
+            case DAY -> Duration.ofDays(1);
+            case WEEK -> Duration.ofDays(7);
+            case MONTH -> Duration.ofDays(28);
+        };
+    }
+
+    static List<SeriesPoint> load(final TrackingFilter trackingFilter, final SeriesFilter filter) throws SQLException {
+        final TrackingDimension key = filter.groupBy() == SeriesGroupBy.USER ? TrackingDimension.USER : TrackingDimension.PROJECT;
+        final Set<TrackingDimension> groupBy = EnumSet.of(key, TrackingDimension.valueOf(filter.bucket().name()));
+        return Database.sumTrackedSeries(trackingFilter, groupBy, parseZone(filter.timezone()).orElseThrow()).stream()
+                .map(total -> new SeriesPoint(
+                        key == TrackingDimension.USER ? total.user().orElseThrow() : total.project().orElseThrow(),
+                        total.period().orElseThrow().toString(),
+                        total.minutes(),
+                        total.entries()))
+                .toList();
+    }
+
+    static Map<Integer, String> users(final List<SeriesPoint> series, final SeriesFilter filter) throws SQLException {
+        if (filter.groupBy() != SeriesGroupBy.USER) {
+            return Map.of();
+        }
+        return Database.getUserMails(series.stream().map(SeriesPoint::key).collect(Collectors.toSet()));
+    }
+}
@@ -31,23 +31,35 @@ import de.OneManProjects.data.*;
 import de.OneManProjects.data.dto.*;
 import de.OneManProjects.data.enums.RefType;
 import de.OneManProjects.data.enums.Role;
+import de.OneManProjects.database.TrackingFilter;
+import de.OneManProjects.events.UserEvents;
 import de.OneManProjects.export.Exporter;
+import de.OneManProjects.export.Importer;
 import de.OneManProjects.security.Auth;
+import de.OneManProjects.security.Principal;
+import de.OneManProjects.utils.Util;
 import io.javalin.http.Context;
 import io.javalin.http.HttpStatus;
+import io.javalin.http.sse.SseClient;
 import io.javalin.openapi.*;
 
+import java.io.IOException;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.time.DateTimeException;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
 public class Users {
 
+    private static final int MAX_BULK_OPERATIONS = Util.getEnvVar("MAX_BULK_OPERATIONS", Integer::parseInt, false).orElse(1000);
+
     @OpenApi(
             summary = "Delete User Account",
             operationId = "user delete",
@@ -163,6 +175,9 @@ public class Users {
     )
     public static void getUserData(final Context ctx) throws SQLException {
         final int userId = Auth.getUserFromContext(ctx);
+        if (Responses.isNotModified(ctx, userId)) {
+            return;
+        }
         final List<Project> projects = Database.getProjects(userId, true);
         final Optional<User> user = Database.getUserInfo(userId);
         final List<Group> groups = Database.getUserGroups(userId);
@@ -198,20 +213,52 @@ public class Users {
             @OpenApiResponse(status = "503", description = "SERVICE_UNAVAILABLE")
         }
     )
-    public static void exportData(final Context ctx) throws SQLException {
+    public static void exportData(final Context ctx) throws SQLException, IOException {
         final ExportFilter filter = ctx.bodyAsClass(ExportFilter.class);
         final int userId = Auth.getUserFromContext(ctx);
         if (userId > -1) {
-            final byte[] data = Exporter.exportUserData(filter, userId);
             ctx.header("export", getExportFilename(filter.filter()));
             ctx.header("Content-Disposition", "attachment; filename=" + getExportFilename(filter.filter()));
             ctx.contentType("text/csv");
-            ctx.result(data);
+            Exporter.exportUserData(filter, userId, ctx.outputStream());
         } else {
             ctx.status(HttpStatus.SERVICE_UNAVAILABLE);
         }
     }
 
+    @OpenApi(
+        summary = "Import User Data",
+        operationId = "user importData",
+        path = "/api/import",
+        methods = HttpMethod.POST,
+        queryParams = @OpenApiParam(name = "timeZone", description = "Timezone the imported entries were tracked in, UTC if missing"),
+        requestBody = @OpenApiRequestBody(
+            content = {@OpenApiContent(type = "text/csv")},
+            description = "CSV in the layout of the detailed export",
+            required = true
+        ),
+        responses = {
+            @OpenApiResponse(status = "200", content = @OpenApiContent(from = ImportResult.class)),
+            @OpenApiResponse(status = "400", description = "BAD_REQUEST, unknown timezone"),
+            @OpenApiResponse(status = "401", description = "UNAUTHORIZED")
+        }
+    )
+    public static void importData(final Context ctx) throws SQLException, IOException {
+        final int userId = Auth.getUserFromContext(ctx);
+        final String timezone = Optional.ofNullable(ctx.queryParam("timeZone")).orElse("UTC");
+        try {
+            ZoneId.of(timezone);
+        } catch (final DateTimeException e) {
+            Responses.setBadRequest(ctx, "unknown timezone " + timezone);
+            return;
+        }
+        final List<Project> projects = new ArrayList<>(Database.getProjects(userId, true));
+        projects.addAll(Database.getUserGroupProjects(userId));
+        final Importer importer = new Importer(ctx.bodyInputStream(), projects, timezone);
+        final int imported = Database.importTracking(userId, importer.copyRows());
+        Responses.setResponseOrError(ctx, new ImportResult(imported, importer.accepted() - imported, importer.rejected(), importer.errors()));
+    }
+
     @OpenApi(
         summary = "Archive Project",
         operationId = "user archiveProject",
@@ -259,6 +306,36 @@ public class Users {
         Responses.setResponseOrError(ctx, res);
     }
 
+    @OpenApi(
+        summary = "Bulk Write Tracking Entries",
+        operationId = "user bulkTracking",
+        path = "/api/bulk",
+        methods = HttpMethod.POST,
+        requestBody = @OpenApiRequestBody(
+            content = {@OpenApiContent(from = TrackingOperation[].class)},
+            description = "Creates, updates and deletes of finished tracking entries",
+            required = true
+        ),
+        responses = {
+            @OpenApiResponse(status = "200", content = @OpenApiContent(from = TrackingOperationResult[].class)),
+            @OpenApiResponse(status = "400", description = "BAD_REQUEST, no or too many operations"),
+            @OpenApiResponse(status = "401", description = "UNAUTHORIZED")
+        }
+    )
+    public static void bulkTracking(final Context ctx) throws SQLException {
+        final TrackingOperation[] operations = ctx.bodyAsClass(TrackingOperation[].class);
+        if (operations == null) {
+            Responses.setBadRequest(ctx, "a list of operations is required");
+            return;
+        }
+        if (operations.length > MAX_BULK_OPERATIONS) {
+            Responses.setBadRequest(ctx, "at most " + MAX_BULK_OPERATIONS + " operations per request");
+            return;
+        }
+        final int userID = Auth.getUserFromContext(ctx);
+        Responses.setResponseOrError(ctx, Database.applyTrackingOperations(userID, Arrays.asList(operations)));
+    }
+
     @OpenApi(
         summary = "Get Data to Analyse",
         operationId = "user getDataToAnalyse",
@@ -280,11 +357,45 @@ public class Users {
         if (userId > -1) {
             final List<Project> userProjects = Database.getProjects(userId, true);
             final List<Project> groupProjects = Database.getUserGroupProjects(userId);
+            // raw entries on purpose, the calendar edits them by id and the activity charts bucket them by the
+            // browser's local day, which UTC days of the rollup cannot give. Aggregates come from /api/series
             final List<Tracked> tracked = Database.getTrackedForRange(userId, Instant.parse(filter.start()), Instant.parse(filter.end()));
             Responses.setResponseOrError(ctx, new AnalysisData(userProjects, groupProjects, tracked));
         }
     }
 
+    @OpenApi(
+        summary = "Get Aggregated Series",
+        operationId = "user getSeries",
+        path = "/api/series",
+        methods = HttpMethod.POST,
+        requestBody = @OpenApiRequestBody(
+            content = {@OpenApiContent(from = SeriesFilter.class)},
+            description = "SeriesFilter object",
+            required = true
+        ),
+        responses = {
+            @OpenApiResponse(status = "200", content = @OpenApiContent(from = SeriesData.class)),
+            @OpenApiResponse(status = "400", description = "BAD_REQUEST"),
+            @OpenApiResponse(status = "401", description = "UNAUTHORIZED")
+        }
+    )
+    public static void getSeries(final Context ctx) throws SQLException {
+        final SeriesFilter filter = ctx.bodyAsClass(SeriesFilter.class);
+        final int userId = Auth.getUserFromContext(ctx);
+        if (userId > -1) {
+            final Optional<String> invalid = Series.validate(filter);
+            if (invalid.isPresent()) {
+                Responses.setBadRequest(ctx, invalid.get());
+                return;
+            }
+            final List<SeriesPoint> series = Series.load(TrackingFilter.forUser(userId, Instant.parse(filter.start()), Instant.parse(filter.end())), filter);
+            final List<Project> userProjects = Database.getProjects(userId, true);
+            final List<Project> groupProjects = Database.getUserGroupProjects(userId);
+            Responses.setResponseOrError(ctx, new SeriesData(userProjects, groupProjects, Series.users(series, filter), series));
+        }
+    }
+
     @OpenApi(
         summary = "Delete Tracking Entry",
         operationId = "user deleteTracking",
@@ -344,9 +455,15 @@ public class Users {
         }
     )
     public static void getUserRole(final Context ctx) throws SQLException {
-        final int userId = Auth.getUserFromContext(ctx);
-        final List<Role> roles = Database.getUserRoles(userId);
-        Responses.setResponseOrError(ctx, Role.getHighestRole(roles));
+        final Optional<Principal> principal = Auth.getPrincipal(ctx);
+        if (principal.isPresent()) {
+            if (Responses.isNotModified(ctx, principal.get().getUserId())) {
+                return;
+            }
+            Responses.setResponseOrError(ctx, Role.getHighestRole(principal.get().getRoles()));
+        } else {
+            ctx.status(HttpStatus.BAD_REQUEST);
+        }
     }
 
     @OpenApi(
@@ -361,6 +478,9 @@ public class Users {
     )
     public static void getUserProjects(final Context ctx) throws SQLException {
         final int userId = Auth.getUserFromContext(ctx);
+        if (Responses.isNotModified(ctx, userId)) {
+            return;
+        }
         final List<Project> userProjects = Database.getProjects(userId, false);
         final List<Project> groupProjects = Database.getUserGroupProjects(userId);
         Responses.setResponseOrError(ctx, new UserProjects(userProjects, groupProjects));
@@ -404,6 +524,9 @@ public class Users {
     )
     public static void getUserArchivedProjects(final Context ctx) throws SQLException {
         final int userId = Auth.getUserFromContext(ctx);
+        if (Responses.isNotModified(ctx, userId)) {
+            return;
+        }
         final List<Project> userProjects = Database.getProjects(userId, true);
         final List<Project> groupProjects = Database.getUserGroupProjects(userId);
         Responses.setResponseOrError(ctx, new UserProjects(userProjects, groupProjects));
@@ -451,10 +574,58 @@ public class Users {
         final int userID = Auth.getUserFromContext(ctx);
         final Optional<Project> p = Database.getProjectById(start.getProjectID());
         if (p.isPresent()) {
-            final int res = Database.addTracking(new Tracked(
-                    -1, userID, start.getProjectID(), Timestamp.from(Instant.now()), start.getTimeZone()
-            ));
-            Responses.setResponseOrError(ctx, res > 0);
+            try {
+                final int res = Database.addTracking(new Tracked(
+                        -1, userID, start.getProjectID(), Timestamp.from(Instant.now()), start.getTimeZone()
+                ));
+                Responses.setResponseOrError(ctx, res > 0);
+            } catch (final SQLException e) {
+                if (!Database.isUniqueViolation(e)) {
+                    throw e;
+                }
+                // another entry is already running
+                ctx.status(HttpStatus.CONFLICT);
+                ctx.json(false);
+            }
+        } else {
+            ctx.status(HttpStatus.FORBIDDEN);
+            ctx.json(false);
+        }
+    }
+
+    @OpenApi(
+            summary = "Switch Tracking to a Project",
+            operationId = "switch",
+            path = "/api/switch",
+            methods = HttpMethod.POST,
+            requestBody = @OpenApiRequestBody(
+                    content = {@OpenApiContent(from = Start.class)},
+                    description = "Start Object",
+                    required = true
+            ),
+            responses = {
+                    @OpenApiResponse(status = "200", content = @OpenApiContent(from = Tracked.class)),
+                    @OpenApiResponse(status = "401", description = "UNAUTHORIZED"),
+                    @OpenApiResponse(status = "403", description = "FORBIDDEN"),
+                    @OpenApiResponse(status = "409", description = "CONFLICT, another start of the user won"),
+            }
+    )
+    public static void switchTracking(final Context ctx) throws SQLException {
+        final Start start = ctx.bodyAsClass(Start.class);
+        final int userID = Auth.getUserFromContext(ctx);
+        final Optional<Tracked> res;
+        try {
+            res = Database.switchTracking(userID, start.getProjectID(), start.getTimeZone());
+        } catch (final SQLException e) {
+            if (!Database.isUniqueViolation(e)) {
+                throw e;
+            }
+            ctx.status(HttpStatus.CONFLICT);
+            ctx.json(false);
+            return;
+        }
+        if (res.isPresent()) {
+            Responses.setResponseOrError(ctx, res, false);
         } else {
             ctx.status(HttpStatus.FORBIDDEN);
             ctx.json(false);
@@ -515,6 +686,19 @@ public class Users {
         Responses.setResponseOrError(ctx, res);
     }
 
+    /**
+     * Event stream with the running timer ("tracking") and the minutes tracked this month ("month"). The payloads are
+     * the same as those of /api/active and /api/month. Authentication is checked before the stream is opened.
+     */
+    public static void subscribeEvents(final SseClient client) {
+        final Optional<Principal> principal = Auth.getPrincipal(client.ctx());
+        if (principal.isEmpty()) {
+            client.close();
+            return;
+        }
+        UserEvents.connect(principal.get().getUserId(), client);
+    }
+
     @OpenApi(
         summary = "Update Password",
         operationId = "user updatePassword",
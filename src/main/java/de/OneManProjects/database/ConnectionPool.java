@@ -0,0 +1,89 @@
+package de.OneManProjects.database;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * Builds the shared, bounded connection pool all of {@link de.OneManProjects.Database} borrows from.
+ */
+public class ConnectionPool {
+
+    // longer than the wait of the change bus listener for notifications
+    private static final int DEDICATED_SOCKET_TIMEOUT_SEC = 30;
+
+    private ConnectionPool() {
+    }
+
+    public static HikariDataSource create(final DatabaseConfig config) {
+        final HikariConfig hikari = new HikariConfig();
+        hikari.setPoolName("klukka");
+        hikari.setJdbcUrl(config.jdbcUrl());
+        hikari.setUsername(config.user());
+        hikari.setPassword(config.password());
+        hikari.addDataSourceProperty("ssl", String.valueOf(config.ssl()));
+        hikari.setMaximumPoolSize(config.maxPoolSize());
+        hikari.setMinimumIdle(Math.min(config.minIdle(), config.maxPoolSize()));
+        hikari.setConnectionTimeout(config.connectionTimeoutMs());
+        hikari.setValidationTimeout(config.validationTimeoutMs());
+        hikari.setIdleTimeout(config.idleTimeoutMs());
+        hikari.setMaxLifetime(config.maxLifetimeMs());
+        hikari.setLeakDetectionThreshold(config.leakDetectionMs());
+        hikari.setAutoCommit(true);
+        return new HikariDataSource(hikari);
+    }
+
+    /**
+     * Opens a connection outside of the pool for sessions that stay open for the lifetime of the node, like the
+     * listener of the change notifications. Such a connection would otherwise hold a pool slot forever.
+     * Reads time out after {@value #DEDICATED_SOCKET_TIMEOUT_SEC} seconds, so a connection that was dropped silently
+     * fails its next statement instead of blocking forever.
+     */
+    public static Connection openDedicated(final DatabaseConfig config) throws SQLException {
+        final Properties properties = new Properties();
+        properties.setProperty("user", config.user());
+        properties.setProperty("password", config.password());
+        properties.setProperty("ssl", String.valueOf(config.ssl()));
+        properties.setProperty("ApplicationName", "klukka-listener");
+        properties.setProperty("tcpKeepAlive", "true");
+        properties.setProperty("socketTimeout", String.valueOf(DEDICATED_SOCKET_TIMEOUT_SEC));
+        return DriverManager.getConnection(config.jdbcUrl(), properties);
+    }
+
+    public static void close(final DataSource dataSource) {
+        if (dataSource instanceof final HikariDataSource hikari && !hikari.isClosed()) {
+            hikari.close();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package de.OneManProjects.database;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import de.OneManProjects.utils.Util;
+
+import java.util.Optional;
+
+/**
+ * Immutable connection and pool settings, read once at startup.
+ */
+public record DatabaseConfig(String host,
+                             int port,
+                             String name,
+                             String user,
+                             String password,
+                             boolean ssl,
+                             int maxPoolSize,
+                             int minIdle,
+                             long connectionTimeoutMs,
+                             long validationTimeoutMs,
+                             long idleTimeoutMs,
+                             long maxLifetimeMs,
+                             long leakDetectionMs) {
+
+    public static DatabaseConfig fromEnv() {
+        final int dbPort = Util.getEnvVar("DATABASE_PORT", Integer::parseInt, true).orElseThrow(() -> new RuntimeException("DATABASE_PORT is not defined"));
+        final String dbHost = Util.getEnvVar("DATABASE_HOST", s -> s, true).orElseThrow(() -> new RuntimeException("DATABASE_HOST  is not defined"));
+        final String dbSecret = Util.getEnvVar("DATABASE_PASSWORD", s -> s, true).orElseThrow(() -> new RuntimeException("DATABASE_PASSWORD is not defined"));
+        final String dbName = Util.getEnvVar("DATABASE_NAME", s -> s, true).orElseThrow(() -> new RuntimeException("DATABASE_NAME is not defined"));
+        final String dbUser = Util.getEnvVar("DATABASE_USER", s -> s, true).orElseThrow(() -> new RuntimeException("DATABASE_USER is not defined"));
+        final Optional<String> dbSsl = Util.getEnvVar("DATABASE_SSL", s -> s, false);
+
+        return new DatabaseConfig(
+                dbHost,
+                dbPort,
+                dbName,
+                dbUser,
+                dbSecret,
+                Boolean.parseBoolean(dbSsl.orElse("false")),
+                Util.getEnvVar("DATABASE_POOL_SIZE", Integer::parseInt, false).orElse(10),
+                Util.getEnvVar("DATABASE_POOL_MIN_IDLE", Integer::parseInt, false).orElse(2),
+                Util.getEnvVar("DATABASE_CONNECTION_TIMEOUT_MS", Long::parseLong, false).orElse(10_000L),
+                Util.getEnvVar("DATABASE_VALIDATION_TIMEOUT_MS", Long::parseLong, false).orElse(3_000L),
+                Util.getEnvVar("DATABASE_IDLE_TIMEOUT_MS", Long::parseLong, false).orElse(300_000L),
+                Util.getEnvVar("DATABASE_MAX_LIFETIME_MS", Long::parseLong, false).orElse(1_800_000L),
+                Util.getEnvVar("DATABASE_LEAK_DETECTION_MS", Long::parseLong, false).orElse(60_000L)
+        );
+    }
+
+    public String jdbcUrl() {
+        return String.format("jdbc:postgresql://%s:%d/%s", host, port, name);
+    }
+
+    @Override
+    public String toString() {
+        // keep the password out of logs
+        return "DatabaseConfig[" + user + "@" + jdbcUrl() + ", ssl=" + ssl + ", maxPoolSize=" + maxPoolSize + "]";
+    }
+}
@@ -0,0 +1,112 @@
+package de.OneManProjects.database;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import org.postgresql.PGConnection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Wraps pooled connections so statement executions are timed and counted in {@link de.OneManProjects.metrics.QueryMetrics}
+ * and reported to the flight recorder as {@link de.OneManProjects.metrics.QueryEvent}.
+ * The connection is a dynamic proxy that only hands out {@link TimedStatement}s, the statements are plain delegates so
+ * setting parameters and reading results cost no reflection. Rows changed by updates are counted from the update counts,
+ * rows read are counted by the readers through {@link #rowsRead}. COPY goes through {@link #copyIn} and {@link #copyOut}.
+ */
+public class Instrumentation {
+
+    private interface Copy {
+        long run(PGConnection connection) throws SQLException, IOException;
+    }
+
+    private Instrumentation() {
+    }
+
+    public static Connection wrap(final Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Instrumentation.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            final Object result;
+            try {
+                result = method.invoke(connection, args);
+            } catch (final InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (method.getName().equals("prepareStatement")) {
+                return new TimedPreparedStatement((PreparedStatement) result, (String) args[0]);
+            } else if (method.getName().equals("createStatement")) {
+                return new TimedStatement<>((Statement) result);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Adds rows read from the result of the statement's last execution.
+     */
+    public static void rowsRead(final Statement statement, final long count) {
+        if (statement instanceof final TimedStatement<?> timed) {
+            timed.rows(count);
+        }
+    }
+
+    /**
+     * Runs COPY FROM STDIN with the rows of {@code from}, timed until all rows are sent. Returns the number of rows.
+     */
+    public static long copyIn(final Connection connection, final String sql, final Reader from, final int bufferSize) throws SQLException, IOException {
+        return copy(connection, sql, pg -> pg.getCopyAPI().copyIn(sql, from, bufferSize));
+    }
+
+    /**
+     * Runs COPY TO STDOUT into {@code to}, timed until all rows are written. Returns the number of rows.
+     */
+    public static long copyOut(final Connection connection, final String sql, final OutputStream to) throws SQLException, IOException {
+        return copy(connection, sql, pg -> pg.getCopyAPI().copyOut(sql, to));
+    }
+
+    private static long copy(final Connection connection, final String sql, final Copy copy) throws SQLException, IOException {
+        final PGConnection pg = connection.unwrap(PGConnection.class);
+        final TimedQuery query = new TimedQuery(sql);
+        final long rows;
+        try {
+            rows = copy.run(pg);
+        } catch (final SQLException | IOException | RuntimeException e) {
+            query.failed();
+            throw e;
+        }
+        query.executed();
+        query.rows(rows);
+        query.finish();
+        return rows;
+    }
+}
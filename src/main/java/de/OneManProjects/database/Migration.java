@@ -0,0 +1,76 @@
+package de.OneManProjects.database;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * A single versioned schema change. Once released the statements of a migration must not be edited,
+ * the runner refuses to start if the checksum of an applied migration no longer matches.
+ * <p>
+ * Concurrent migrations run outside a transaction so they can use {@code CREATE INDEX CONCURRENTLY},
+ * their statements therefore have to be safe to re-run after a partial failure.
+ */
+public record Migration(int version, String description, boolean concurrent, List<String> statements) {
+
+    public static Migration transactional(final int version, final String description, final String... statements) {
+        return new Migration(version, description, false, List.of(statements));
+    }
+
+    public static Migration concurrent(final int version, final String description, final List<String> statements) {
+        return new Migration(version, description, true, List.copyOf(statements));
+    }
+
+    /**
+     * Statements to (re)build an index without locking writes on the table. A failed concurrent build leaves an
+     * invalid index behind, so it is dropped first.
+     */
+    public static List<String> concurrentIndex(final String name, final String table, final String definition, final boolean unique) {
+        final List<String> statements = new ArrayList<>();
+        statements.add("DROP INDEX CONCURRENTLY IF EXISTS " + name);
+        statements.add("CREATE " + (unique ? "UNIQUE " : "") + "INDEX CONCURRENTLY " + name + " ON " + table + " " + definition);
+        return statements;
+    }
+
+    public String checksum() {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (final String statement : statements) {
+                digest.update(statement.trim().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) ';');
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
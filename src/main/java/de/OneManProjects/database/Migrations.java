@@ -0,0 +1,195 @@
+package de.OneManProjects.database;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Applies the versioned schema migrations on top of the base tables created by
+ * {@link de.OneManProjects.Database#initDataBase()}. Applied versions are recorded in {@value #VERSION_TABLE}.
+ */
+public class Migrations {
+
+    private static final Logger logger = LoggerFactory.getLogger(Migrations.class);
+
+    static final String VERSION_TABLE = "schema_version";
+    // arbitrary key so only one node migrates at a time
+    private static final long LOCK_KEY = 0x6B6C756B6B61L;
+    private static final long LOCK_POLL_MS = 500;
+
+    public static final List<Migration> MIGRATIONS = List.of(
+            Migration.concurrent(1, "indexes for hot lookups and a single active tracking per user", Stream.of(
+                    List.of("UPDATE tracking SET active = false, end_time = COALESCE(end_time, now() AT TIME ZONE 'UTC') " +
+                            "WHERE active = true AND id NOT IN (SELECT MAX(id) FROM tracking WHERE active = true GROUP BY idUser)"),
+                    Migration.concurrentIndex("tracking_user_start_idx", "tracking", "(idUser, start_time)", false),
+                    Migration.concurrentIndex("tracking_project_start_idx", "tracking", "(project, start_time)", false),
+                    Migration.concurrentIndex("tracking_active_user_uidx", "tracking", "(idUser) WHERE active = true", true),
+                    Migration.concurrentIndex("tokens_token_idx", "tokens", "(token)", false),
+                    Migration.concurrentIndex("projects_ref_idx", "projects", "(refType, ref)", false),
+                    Migration.concurrentIndex("roles_user_idx", "roles", "(idUser)", false),
+                    Migration.concurrentIndex("groups_owner_idx", "groups", "(owner)", false),
+                    Migration.concurrentIndex("groupref_user_idx", "groupRef", "(idUser)", false)
+            ).flatMap(List::stream).toList()),
+            Migration.transactional(2, "store only SHA-256 digests of tokens",
+                    "UPDATE tokens SET token = encode(sha256(convert_to(token, 'UTF8')), 'hex')"),
+            Migration.transactional(3, "role version for role claims in session tokens",
+                    "ALTER TABLE users ADD COLUMN IF NOT EXISTS role_version INTEGER NOT NULL DEFAULT 0"),
+            Migration.transactional(4, "daily rollup of finished tracking entries",
+                    "CREATE TABLE IF NOT EXISTS tracking_daily (" +
+                            "idUser INTEGER NOT NULL REFERENCES users(id) ON DELETE CASCADE, " +
+                            "project INTEGER NOT NULL REFERENCES projects(id) ON DELETE CASCADE, " +
+                            "day DATE NOT NULL, " +
+                            "seconds NUMERIC NOT NULL, " +
+                            "entries INTEGER NOT NULL, " +
+                            "PRIMARY KEY (idUser, project, day))",
+                    "CREATE INDEX IF NOT EXISTS tracking_daily_project_day_idx ON tracking_daily (project, day)",
+                    "INSERT INTO tracking_daily (idUser, project, day, seconds, entries) " +
+                            "SELECT idUser, project, CAST(start_time AS date), SUM(EXTRACT(EPOCH FROM (end_time - start_time))), COUNT(*) " +
+                            "FROM tracking WHERE end_time IS NOT NULL AND idUser IS NOT NULL AND project IS NOT NULL GROUP BY 1, 2, 3")
+    );
+
+    private Migrations() {
+    }
+
+    public static void migrate(final Connection con) throws SQLException {
+        try (final Statement st = con.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS " + VERSION_TABLE + " " +
+                    "(" +
+                    "version INTEGER PRIMARY KEY," +
+                    "description TEXT NOT NULL," +
+                    "checksum TEXT NOT NULL," +
+                    "installed_on TIMESTAMP NOT NULL DEFAULT (now() AT TIME ZONE 'UTC')," +
+                    "execution_ms BIGINT NOT NULL" +
+                    ")");
+        }
+        acquireLock(con);
+        try {
+            final Map<Integer, String> applied = getAppliedChecksums(con);
+            validate(applied);
+            for (final Migration migration : pending(applied)) {
+                apply(con, migration);
+            }
+        } finally {
+            try (final Statement st = con.createStatement()) {
+                st.execute("SELECT pg_advisory_unlock(" + LOCK_KEY + ")");
+            }
+        }
+    }
+
+    /**
+     * Waits for the migration lock with short pg_try_advisory_lock calls instead of a blocking pg_advisory_lock. A
+     * session blocked inside a statement holds a snapshot, and CREATE INDEX CONCURRENTLY on the node that migrates
+     * waits for all older snapshots to go away, so the two nodes would wait on each other until the deadlock detector
+     * aborts one of them and leaves an invalid index behind.
+     */
+    private static void acquireLock(final Connection con) throws SQLException {
+        boolean logged = false;
+        while (true) {
+            try (final Statement st = con.createStatement()) {
+                final ResultSet rs = st.executeQuery("SELECT pg_try_advisory_lock(" + LOCK_KEY + ")");
+                if (rs.next() && rs.getBoolean(1)) {
+                    return;
+                }
+            }
+            if (!logged) {
+                logger.info("Another node is migrating the database, waiting for it to finish");
+                logged = true;
+            }
+            try {
+                Thread.sleep(LOCK_POLL_MS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for the migration lock", e);
+            }
+        }
+    }
+
+    static void validate(final Map<Integer, String> applied) {
+        for (final Migration migration : MIGRATIONS) {
+            final String checksum = applied.get(migration.version());
+            if (checksum != null && !checksum.equals(migration.checksum())) {
+                throw new IllegalStateException("Checksum mismatch for migration " + migration.version() + " (" + migration.description() + "), applied migrations must not be changed");
+            }
+        }
+        final int latest = MIGRATIONS.get(MIGRATIONS.size() - 1).version();
+        applied.keySet().stream().filter(v -> v > latest).forEach(v ->
+                logger.warn("Database schema has migration {} applied which is newer than this build knows", v));
+    }
+
+    static List<Migration> pending(final Map<Integer, String> applied) {
+        return MIGRATIONS.stream().filter(m -> !applied.containsKey(m.version())).toList();
+    }
+
+    private static Map<Integer, String> getAppliedChecksums(final Connection con) throws SQLException {
+        final Map<Integer, String> applied = new HashMap<>();
+        try (final PreparedStatement statement = con.prepareStatement("SELECT version, checksum FROM " + VERSION_TABLE)) {
+            final ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                applied.put(rs.getInt("version"), rs.getString("checksum"));
+            }
+        }
+        return applied;
+    }
+
+    private static void apply(final Connection con, final Migration migration) throws SQLException {
+        logger.info("Applying database migration {}: {}", migration.version(), migration.description());
+        final long started = System.nanoTime();
+        final boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(migration.concurrent());
+        try {
+            try (final Statement st = con.createStatement()) {
+                for (final String statement : migration.statements()) {
+                    st.execute(statement);
+                }
+            }
+            try (final PreparedStatement statement = con.prepareStatement("INSERT INTO " + VERSION_TABLE + " (version, description, checksum, execution_ms) VALUES(?,?,?,?)")) {
+                statement.setInt(1, migration.version());
+                statement.setString(2, migration.description());
+                statement.setString(3, migration.checksum());
+                statement.setLong(4, (System.nanoTime() - started) / 1_000_000);
+                statement.executeUpdate();
+            }
+            if (!migration.concurrent()) {
+                con.commit();
+            }
+        } catch (final SQLException e) {
+            if (!migration.concurrent()) {
+                con.rollback();
+            }
+            throw e;
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package de.OneManProjects.database;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version counters for the data behind the read-mostly endpoints. Each user has a counter for their own projects,
+ * tracking and tokens; everything several users see (groups, memberships, group projects, users and roles) shares one
+ * counter. The counters live in this process only, the boot id keeps tags from an earlier run from matching.
+ */
+public class ResourceVersions {
+
+    private static final String BOOT_ID = UUID.randomUUID().toString().substring(0, 8);
+    private static final Map<Integer, AtomicLong> USER_VERSIONS = new ConcurrentHashMap<>();
+    private static final AtomicLong SHARED_VERSION = new AtomicLong();
+
+    private ResourceVersions() {
+    }
+
+    public static void bumpUser(final int user) {
+        USER_VERSIONS.computeIfAbsent(user, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    public static void bumpShared() {
+        SHARED_VERSION.incrementAndGet();
+    }
+
+    public static void forgetUser(final int user) {
+        USER_VERSIONS.remove(user);
+    }
+
+    /**
+     * Weak entity tag for everything the user can read. It has to be taken before the data is loaded, so a write that
+     * races with the read leads to a newer body under an older tag and never the other way round.
+     * Monthly totals reset at the start of a month, so the month is part of the tag.
+     */
+    public static String etag(final int user) {
+        final AtomicLong userVersion = USER_VERSIONS.get(user);
+        return "W/\"" + BOOT_ID + "-" + user + "-" + (userVersion == null ? 0 : userVersion.get()) + "-" + SHARED_VERSION.get()
+                + "-" + YearMonth.now(ZoneOffset.UTC) + "\"";
+    }
+}
@@ -0,0 +1,77 @@
+package de.OneManProjects.database;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import de.OneManProjects.metrics.QueryEvent;
+import de.OneManProjects.metrics.QueryMetrics;
+
+/**
+ * One execution of an instrumented statement. Records its time and rows in {@link QueryMetrics} and reports it to the
+ * flight recorder as {@link QueryEvent} once it is finished.
+ */
+final class TimedQuery {
+
+    private final QueryMetrics.Query query;
+    private final QueryEvent event = new QueryEvent();
+    private final long started;
+    private boolean finished;
+
+    TimedQuery(final String sql) {
+        this.query = QueryMetrics.query(sql);
+        event.begin();
+        this.started = System.nanoTime();
+    }
+
+    void executed() {
+        query.executed(System.nanoTime() - started);
+    }
+
+    void failed() {
+        query.failed();
+        event.failed = true;
+        finish();
+    }
+
+    void rows(final long count) {
+        query.rows(count);
+        if (!finished) {
+            event.rows += count;
+        }
+    }
+
+    void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (event.shouldCommit()) {
+            event.fingerprint = query.fingerprint();
+            event.query = query.text();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package de.OneManProjects.database;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+
+/**
+ * Statement of an instrumented connection. The executions are timed as {@link TimedQuery}, every other call goes
+ * straight to the driver's statement. The execution of a query stays open until the statement runs again or is closed,
+ * so reading the result is part of its flight recorder event.
+ */
+class TimedStatement<S extends Statement> implements Statement {
+
+    interface Execution<T> {
+        T run() throws SQLException;
+    }
+
+    protected final S delegate;
+    private TimedQuery last;
+
+    TimedStatement(final S delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Statement text of a batch, the batch of a plain statement can hold any statements.
+     */
+    String batchSql() {
+        return null;
+    }
+
+    final <T> T run(final String sql, final Execution<T> execution) throws SQLException {
+        finish();
+        final TimedQuery query = new TimedQuery(sql);
+        final T result;
+        try {
+            result = execution.run();
+        } catch (final SQLException | RuntimeException e) {
+            query.failed();
+            throw e;
+        }
+        query.executed();
+        last = query;
+        return result;
+    }
+
+    final boolean executed(final boolean hasResultSet) {
+        if (!hasResultSet) {
+            finish();
+        }
+        return hasResultSet;
+    }
+
+    final int updated(final int count) {
+        rows(Math.max(count, 0));
+        finish();
+        return count;
+    }
+
+    final long largeUpdated(final long count) {
+        rows(Math.max(count, 0));
+        finish();
+        return count;
+    }
+
+    final int[] batched(final int[] counts) {
+        for (final int count : counts) {
+            rows(Math.max(count, 0));
+        }
+        finish();
+        return counts;
+    }
+
+    final long[] largeBatched(final long[] counts) {
+        for (final long count : counts) {
+            rows(Math.max(count, 0));
+        }
+        finish();
+        return counts;
+    }
+
+    final void rows(final long count) {
+        if (last != null) {
+            last.rows(count);
+        }
+    }
+
+    private void finish() {
+        if (last != null) {
+            last.finish();
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            delegate.close();
+        } finally {
+            finish();
+        }
+    }
+
+    @Override
+    public boolean execute(final String sql) throws SQLException {
+        return executed(run(sql, () -> delegate.execute(sql)));
+    }
+
+    @Override
+    public boolean execute(final String sql, final int autoGeneratedKeys) throws SQLException {
+        return executed(run(sql, () -> delegate.execute(sql, autoGeneratedKeys)));
+    }
+
+    @Override
+    public boolean execute(final String sql, final int[] columnIndexes) throws SQLException {
+        return executed(run(sql, () -> delegate.execute(sql, columnIndexes)));
+    }
+
+    @Override
+    public boolean execute(final String sql, final String[] columnNames) throws SQLException {
+        return executed(run(sql, () -> delegate.execute(sql, columnNames)));
+    }
+
+    @Override
+    public ResultSet executeQuery(final String sql) throws SQLException {
+        return run(sql, () -> delegate.executeQuery(sql));
+    }
+
+    @Override
+    public int executeUpdate(final String sql) throws SQLException {
+        return updated(run(sql, () -> delegate.executeUpdate(sql)));
+    }
+
+    @Override
+    public int executeUpdate(final String sql, final int autoGeneratedKeys) throws SQLException {
+        return updated(run(sql, () -> delegate.executeUpdate(sql, autoGeneratedKeys)));
+    }
+
+    @Override
+    public int executeUpdate(final String sql, final int[] columnIndexes) throws SQLException {
+        return updated(run(sql, () -> delegate.executeUpdate(sql, columnIndexes)));
+    }
+
+    @Override
+    public int executeUpdate(final String sql, final String[] columnNames) throws SQLException {
+        return updated(run(sql, () -> delegate.executeUpdate(sql, columnNames)));
+    }
+
+    @Override
+    public long executeLargeUpdate(final String sql) throws SQLException {
+        return largeUpdated(run(sql, () -> delegate.executeLargeUpdate(sql)));
+    }
+
+    @Override
+    public long executeLargeUpdate(final String sql, final int autoGeneratedKeys) throws SQLException {
+        return largeUpdated(run(sql, () -> delegate.executeLargeUpdate(sql, autoGeneratedKeys)));
+    }
+
+    @Override
+    public long executeLargeUpdate(final String sql, final int[] columnIndexes) throws SQLException {
+        return largeUpdated(run(sql, () -> delegate.executeLargeUpdate(sql, columnIndexes)));
+    }
+
+    @Override
+    public long executeLargeUpdate(final String sql, final String[] columnNames) throws SQLException {
+        return largeUpdated(run(sql, () -> delegate.executeLargeUpdate(sql, columnNames)));
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        return batched(run(batchSql(), delegate::executeBatch));
+    }
+
+    @Override
+    public long[] executeLargeBatch() throws SQLException {
+        return largeBatched(run(batchSql(), delegate::executeLargeBatch));
+    }
+
+    @Override
+    public void addBatch(final String sql) throws SQLException {
+        delegate.addBatch(sql);
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        delegate.cancel();
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        delegate.clearBatch();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        delegate.clearWarnings();
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        delegate.closeOnCompletion();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return delegate.getConnection();
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return delegate.getFetchDirection();
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return delegate.getFetchSize();
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        return delegate.getGeneratedKeys();
+    }
+
+    @Override
+    public long getLargeMaxRows() throws SQLException {
+        return delegate.getLargeMaxRows();
+    }
+
+    @Override
+    public long getLargeUpdateCount() throws SQLException {
+        return delegate.getLargeUpdateCount();
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException {
+        return delegate.getMaxFieldSize();
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException {
+        return delegate.getMaxRows();
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        return delegate.getMoreResults();
+    }
+
+    @Override
+    public boolean getMoreResults(final int current) throws SQLException {
+        return delegate.getMoreResults(current);
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        return delegate.getQueryTimeout();
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        return delegate.getResultSet();
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException {
+        return delegate.getResultSetConcurrency();
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException {
+        return delegate.getResultSetHoldability();
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException {
+        return delegate.getResultSetType();
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException {
+        return delegate.getUpdateCount();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return delegate.getWarnings();
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException {
+        return delegate.isCloseOnCompletion();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return delegate.isClosed();
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        return delegate.isPoolable();
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+        return delegate.isWrapperFor(iface);
+    }
+
+    @Override
+    public void setCursorName(final String name) throws SQLException {
+        delegate.setCursorName(name);
+    }
+
+    @Override
+    public void setEscapeProcessing(final boolean enable) throws SQLException {
+        delegate.setEscapeProcessing(enable);
+    }
+
+    @Override
+    public void setFetchDirection(final int direction) throws SQLException {
+        delegate.setFetchDirection(direction);
+    }
+
+    @Override
+    public void setFetchSize(final int rows) throws SQLException {
+        delegate.setFetchSize(rows);
+    }
+
+    @Override
+    public void setLargeMaxRows(final long max) throws SQLException {
+        delegate.setLargeMaxRows(max);
+    }
+
+    @Override
+    public void setMaxFieldSize(final int max) throws SQLException {
+        delegate.setMaxFieldSize(max);
+    }
+
+    @Override
+    public void setMaxRows(final int max) throws SQLException {
+        delegate.setMaxRows(max);
+    }
+
+    @Override
+    public void setPoolable(final boolean poolable) throws SQLException {
+        delegate.setPoolable(poolable);
+    }
+
+    @Override
+    public void setQueryTimeout(final int seconds) throws SQLException {
+        delegate.setQueryTimeout(seconds);
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException {
+        return delegate.unwrap(iface);
+    }
+}
@@ -0,0 +1,70 @@
+package de.OneManProjects.database;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Dimensions tracked time can be summed up by. At most one time bucket (hour, day, week or month) can be used per query.
+ */
+public enum TrackingDimension {
+    PROJECT("project", null),
+    USER("idUser", null),
+    HOUR(null, "hour"),
+    DAY(null, "day"),
+    WEEK(null, "week"),
+    MONTH(null, "month");
+
+    private final String column;
+    private final String unit;
+
+    TrackingDimension(final String column, final String unit) {
+        this.column = column;
+        this.unit = unit;
+    }
+
+    /**
+     * The SQL expression of this dimension. Time buckets are cut in the local time of {@code zone}. The zone id is inlined
+     * into the statement, it has to come from {@link ZoneId#of} which does not accept quotes.
+     */
+    public String getExpression(final ZoneId zone) {
+        if (!isPeriod()) {
+            return column;
+        }
+        final String time = isUtc(zone) ? "start_time" : "((start_time AT TIME ZONE 'UTC') AT TIME ZONE '" + zone.getId() + "')";
+        return "date_trunc('" + unit + "', " + time + ")";
+    }
+
+    public boolean isPeriod() {
+        return unit != null;
+    }
+
+    public static boolean isUtc(final ZoneId zone) {
+        return zone.normalized().equals(ZoneOffset.UTC);
+    }
+}
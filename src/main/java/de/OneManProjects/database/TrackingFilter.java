@@ -0,0 +1,50 @@
+package de.OneManProjects.database;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Selects finished tracking entries that started at or after {@code start} and ended before {@code end}.
+ * An empty project list means all projects.
+ */
+public record TrackingFilter(Optional<Integer> user, List<Integer> projects, Instant start, Instant end) {
+
+    public static TrackingFilter forUser(final int user, final Instant start, final Instant end) {
+        return new TrackingFilter(Optional.of(user), List.of(), start, end);
+    }
+
+    public static TrackingFilter forProjects(final List<Integer> projects, final Instant start, final Instant end) {
+        return new TrackingFilter(Optional.empty(), List.copyOf(projects), start, end);
+    }
+
+    public TrackingFilter withProject(final int project) {
+        return new TrackingFilter(user, List.of(project), start, end);
+    }
+}
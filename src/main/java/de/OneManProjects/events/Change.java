@@ -0,0 +1,130 @@
+package de.OneManProjects.events;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.util.Optional;
+
+/**
+ * A write that other nodes have to know about, in the compact form sent with pg_notify: the code of the kind followed
+ * by the user, e.g. "T42". Changes every user sees carry no user. A role change also carries the new role version,
+ * e.g. "R42:3", so every node can move its cached version forward instead of reloading it.
+ */
+public record Change(Kind kind, int user, int version) {
+
+    public enum Kind {
+        // tracking entries of the user, including the running timer
+        TRACKING('T', true),
+        // the user's own projects or account
+        USER('U', true),
+        TOKENS('K', true),
+        ROLES('R', true),
+        USER_DELETED('D', true),
+        // groups, memberships and group projects
+        SHARED('S', false),
+        // changes may have been lost, everything cached has to be dropped
+        RESYNC('X', false);
+
+        private final char code;
+        private final boolean perUser;
+
+        Kind(final char code, final boolean perUser) {
+            this.code = code;
+            this.perUser = perUser;
+        }
+
+        static Optional<Kind> fromCode(final char code) {
+            for (final Kind kind : values()) {
+                if (kind.code == code) {
+                    return Optional.of(kind);
+                }
+            }
+            return Optional.empty();
+        }
+    }
+
+    public static Change tracking(final int user) {
+        return new Change(Kind.TRACKING, user, 0);
+    }
+
+    public static Change user(final int user) {
+        return new Change(Kind.USER, user, 0);
+    }
+
+    public static Change tokens(final int user) {
+        return new Change(Kind.TOKENS, user, 0);
+    }
+
+    public static Change roles(final int user, final int version) {
+        return new Change(Kind.ROLES, user, version);
+    }
+
+    public static Change userDeleted(final int user) {
+        return new Change(Kind.USER_DELETED, user, 0);
+    }
+
+    public static Change shared() {
+        return new Change(Kind.SHARED, 0, 0);
+    }
+
+    public static Change resync() {
+        return new Change(Kind.RESYNC, 0, 0);
+    }
+
+    public String encode() {
+        if (!kind.perUser) {
+            return String.valueOf(kind.code);
+        }
+        return version > 0 ? kind.code + Integer.toString(user) + ':' + version : kind.code + Integer.toString(user);
+    }
+
+    /**
+     * Parses an encoded change. Unknown kinds are ignored rather than failing, so nodes of different versions can
+     * run side by side during a rolling update.
+     */
+    public static Optional<Change> decode(final String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return Optional.empty();
+        }
+        final Optional<Kind> kind = Kind.fromCode(encoded.charAt(0));
+        if (kind.isEmpty()) {
+            return Optional.empty();
+        }
+        if (!kind.get().perUser) {
+            return Optional.of(new Change(kind.get(), 0, 0));
+        }
+        final int separator = encoded.indexOf(':');
+        try {
+            if (separator < 0) {
+                return Optional.of(new Change(kind.get(), Integer.parseInt(encoded.substring(1)), 0));
+            }
+            return Optional.of(new Change(kind.get(), Integer.parseInt(encoded.substring(1, separator)),
+                    Integer.parseInt(encoded.substring(separator + 1))));
+        } catch (final NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+}
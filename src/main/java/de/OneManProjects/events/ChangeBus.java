@@ -0,0 +1,271 @@
+package de.OneManProjects.events;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import de.OneManProjects.Database;
+import de.OneManProjects.database.ConnectionPool;
+import de.OneManProjects.database.DatabaseConfig;
+import de.OneManProjects.database.ResourceVersions;
+import de.OneManProjects.security.ApiTokenCache;
+import de.OneManProjects.security.RoleVersions;
+import de.OneManProjects.utils.Util;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the caches and event streams of all nodes behind the load balancer in step. A change is applied to this
+ * node right away; a sender thread collects the changes of the moment into one pg_notify, so a burst of writes costs a
+ * single notification. Every node listens on a dedicated connection and applies what the other nodes sent.
+ * Notifications sent while a listener is disconnected are lost, so after reconnecting the node drops everything it
+ * cached and tells open event streams to resync.
+ */
+public class ChangeBus {
+
+    public static final String CHANNEL = "klukka_changes";
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeBus.class);
+
+    private static final String NODE_ID = UUID.randomUUID().toString().substring(0, 8);
+    // pg_notify payloads are limited to 8000 bytes
+    private static final int MAX_PAYLOAD = 7_000;
+    private static final int OUTBOX_SIZE = Util.getEnvVar("CHANGE_BUS_QUEUE_SIZE", Integer::parseInt, false).orElse(10_000);
+    private static final long COALESCE_MS = 20;
+    private static final int POLL_MS = 10_000;
+    private static final long MAX_RECONNECT_MS = 30_000;
+
+    private static final BlockingQueue<Change> OUTBOX = new LinkedBlockingQueue<>(OUTBOX_SIZE);
+    private static volatile boolean running;
+
+    private ChangeBus() {
+    }
+
+    public static synchronized void start(final DatabaseConfig config) {
+        if (running) {
+            return;
+        }
+        running = true;
+        startDaemon("change-bus-sender", ChangeBus::sendLoop);
+        startDaemon("change-bus-listener", () -> listenLoop(config));
+        logger.info("change bus started as node {}", NODE_ID);
+    }
+
+    public static synchronized void stop() {
+        running = false;
+        OUTBOX.clear();
+    }
+
+    /**
+     * Applies a committed change to this node and queues it for the others. Has to be called after the transaction
+     * commits, otherwise a reader could take the new version and still load the old data.
+     */
+    public static void publish(final Change change) {
+        apply(change);
+        if (running && !OUTBOX.offer(change)) {
+            // the database has been unreachable for a while: send one resync instead of the backlog
+            OUTBOX.clear();
+            OUTBOX.offer(Change.resync());
+        }
+    }
+
+    private static void apply(final Change change) {
+        final int user = change.user();
+        switch (change.kind()) {
+            case TRACKING -> {
+                ResourceVersions.bumpUser(user);
+                UserEvents.trackingChanged(user);
+            }
+            case USER -> ResourceVersions.bumpUser(user);
+            case TOKENS -> {
+                ApiTokenCache.invalidateUser(user);
+                ResourceVersions.bumpUser(user);
+            }
+            case ROLES -> {
+                // nodes of the previous version send role changes without the version
+                if (change.version() > 0) {
+                    RoleVersions.advance(user, change.version());
+                } else {
+                    RoleVersions.evict(user);
+                }
+                ResourceVersions.bumpShared();
+            }
+            case USER_DELETED -> {
+                ApiTokenCache.invalidateUser(user);
+                RoleVersions.evict(user);
+                ResourceVersions.forgetUser(user);
+                ResourceVersions.bumpShared();
+            }
+            case SHARED -> ResourceVersions.bumpShared();
+            case RESYNC -> resync();
+        }
+    }
+
+    private static void resync() {
+        ApiTokenCache.clear();
+        RoleVersions.clear();
+        // the shared version is part of every entity tag
+        ResourceVersions.bumpShared();
+        UserEvents.resyncAll();
+    }
+
+    private static void sendLoop() {
+        while (running) {
+            try {
+                final Change first = OUTBOX.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                Thread.sleep(COALESCE_MS);
+                final Set<Change> batch = new LinkedHashSet<>();
+                batch.add(first);
+                OUTBOX.drainTo(batch);
+                send(batch);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static void send(final Set<Change> batch) throws InterruptedException {
+        try {
+            Database.notifyChanges(CHANNEL, payloads(batch));
+        } catch (final SQLException | RuntimeException e) {
+            logger.warn("could not notify other nodes of {} changes: {}", batch.size(), e.getMessage());
+            // what was lost is unknown to the others, so they have to start over once the database is back
+            OUTBOX.offer(Change.resync());
+            Thread.sleep(1_000);
+        }
+    }
+
+    /**
+     * Packs the changes into as few payloads as fit, each in the form "node|T42,U7,S".
+     */
+    private static List<String> payloads(final Collection<Change> changes) {
+        final List<String> payloads = new ArrayList<>();
+        final StringBuilder payload = new StringBuilder(NODE_ID).append('|');
+        final int empty = payload.length();
+        for (final Change change : changes) {
+            final String encoded = change.encode();
+            if (payload.length() + encoded.length() + 1 > MAX_PAYLOAD) {
+                payloads.add(payload.toString());
+                payload.setLength(empty);
+            }
+            if (payload.length() > empty) {
+                payload.append(',');
+            }
+            payload.append(encoded);
+        }
+        if (payload.length() > empty) {
+            payloads.add(payload.toString());
+        }
+        return payloads;
+    }
+
+    private static void listenLoop(final DatabaseConfig config) {
+        boolean missed = false;
+        long backoff = 1_000;
+        while (running) {
+            try (final Connection con = ConnectionPool.openDedicated(config)) {
+                try (final Statement statement = con.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                if (missed) {
+                    logger.info("change bus listener reconnected, resyncing");
+                    resync();
+                }
+                missed = false;
+                backoff = 1_000;
+                final PGConnection pg = con.unwrap(PGConnection.class);
+                try (final Statement ping = con.createStatement()) {
+                    while (running) {
+                        final PGNotification[] notifications = pg.getNotifications(POLL_MS);
+                        if (notifications != null && notifications.length > 0) {
+                            dispatch(notifications);
+                        } else {
+                            // waiting only reads, a connection dropped by a NAT or proxy is noticed when sending
+                            ping.execute("SELECT 1");
+                        }
+                    }
+                }
+            } catch (final SQLException e) {
+                missed = true;
+                logger.warn("change bus listener lost its connection, retrying in {} ms: {}", backoff, e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_RECONNECT_MS);
+            }
+        }
+    }
+
+    /**
+     * Applies what other nodes sent. All notifications that arrived together are merged first, so a user who changed
+     * several times is only handled once.
+     */
+    private static void dispatch(final PGNotification[] notifications) {
+        final Set<Change> changes = new LinkedHashSet<>();
+        for (final PGNotification notification : notifications) {
+            final String payload = notification.getParameter();
+            final int split = payload.indexOf('|');
+            if (split < 0 || payload.substring(0, split).equals(NODE_ID)) {
+                continue;
+            }
+            for (final String encoded : payload.substring(split + 1).split(",")) {
+                Change.decode(encoded).ifPresent(changes::add);
+            }
+        }
+        if (changes.contains(Change.resync())) {
+            resync();
+            return;
+        }
+        changes.forEach(ChangeBus::apply);
+    }
+
+    private static void startDaemon(final String name, final Runnable loop) {
+        final Thread thread = new Thread(loop, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
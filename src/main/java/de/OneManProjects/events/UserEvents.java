@@ -0,0 +1,308 @@
+package de.OneManProjects.events;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import de.OneManProjects.Database;
+import de.OneManProjects.data.dto.Response;
+import io.javalin.http.sse.SseClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Pushes changes of a user's running timer and monthly total to the event streams the user has open. The last events
+ * of every user with a stream are kept, so a browser reconnecting with Last-Event-ID gets what it missed. If that is
+ * no longer available, e.g. after a restart or a long disconnect, the client is told to resync instead.
+ * <p>
+ * Nothing here writes to a stream on the caller's thread. Loading the data of an event runs on a small pool, and every
+ * stream has its own outbox that a virtual thread drains, so a browser that stops reading only stalls its own stream.
+ */
+public class UserEvents {
+
+    public static final String TRACKING = "tracking";
+    public static final String MONTH = "month";
+    public static final String RESYNC = "resync";
+
+    private static final Logger logger = LoggerFactory.getLogger(UserEvents.class);
+
+    private static final String BOOT_ID = UUID.randomUUID().toString().substring(0, 8);
+    private static final int REPLAY_SIZE = 32;
+    private static final long HEARTBEAT_SECONDS = 20;
+    private static final long IDLE_CHANNEL_NANOS = TimeUnit.MINUTES.toNanos(2);
+    private static final int LOADER_THREADS = 2;
+    // a stream this far behind is closed, the browser reconnects and resumes from the replay buffer
+    private static final int MAX_PENDING_WRITES = 64;
+
+    private static final Map<Integer, Channel> CHANNELS = new ConcurrentHashMap<>();
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    // users whose tracking events are queued for loading, further changes before the load starts are covered by it
+    private static final Set<Integer> PENDING_LOADS = ConcurrentHashMap.newKeySet();
+    private static final ExecutorService LOADER = Executors.newFixedThreadPool(LOADER_THREADS, r -> {
+        final Thread thread = new Thread(r, "user-events-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ExecutorService WRITER = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("user-events-writer-", 0).factory());
+    private static final ScheduledExecutorService HEARTBEAT = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "user-events-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        HEARTBEAT.scheduleAtFixedRate(UserEvents::heartbeat, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private record Event(long seq, String type, Object data) {
+        String id() {
+            return BOOT_ID + "-" + seq;
+        }
+    }
+
+    /**
+     * Streams and recent events of one user. Queueing and buffering happen under the channel's lock, so a client that
+     * connects while an event is published gets it exactly once, either replayed or sent.
+     */
+    private static final class Channel {
+        private final Set<Subscriber> clients = ConcurrentHashMap.newKeySet();
+        private final Deque<Event> replay = new ArrayDeque<>();
+        // events up to this sequence number may have been missed by a reconnecting client
+        private long droppedUpTo = SEQUENCE.get();
+        private long idleSince = System.nanoTime();
+    }
+
+    /**
+     * One open stream with the writes queued for it. At most one writer drains the outbox at a time, which keeps the
+     * events in the order they were queued.
+     */
+    private static final class Subscriber {
+        private final SseClient client;
+        private final Queue<Consumer<SseClient>> outbox = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean dropped;
+
+        private Subscriber(final SseClient client) {
+            this.client = client;
+        }
+
+        void enqueue(final Consumer<SseClient> write) {
+            if (dropped) {
+                return;
+            }
+            if (pending.incrementAndGet() > MAX_PENDING_WRITES) {
+                dropped = true;
+                outbox.clear();
+                WRITER.execute(client::close);
+                return;
+            }
+            outbox.add(write);
+            drain();
+        }
+
+        boolean isGone() {
+            return dropped || client.terminated();
+        }
+
+        private void drain() {
+            if (draining.compareAndSet(false, true)) {
+                WRITER.execute(this::write);
+            }
+        }
+
+        private void write() {
+            try {
+                Consumer<SseClient> next;
+                while ((next = outbox.poll()) != null) {
+                    pending.decrementAndGet();
+                    if (!client.terminated()) {
+                        next.accept(client);
+                    }
+                }
+            } catch (final RuntimeException e) {
+                logger.debug("could not write to an event stream", e);
+            } finally {
+                draining.set(false);
+                if (!outbox.isEmpty()) {
+                    drain();
+                }
+            }
+        }
+    }
+
+    private UserEvents() {
+    }
+
+    public static void connect(final int user, final SseClient client) {
+        client.keepAlive();
+        final Subscriber subscriber = new Subscriber(client);
+        while (true) {
+            final Channel channel = CHANNELS.computeIfAbsent(user, k -> new Channel());
+            synchronized (channel) {
+                // the heartbeat may have dropped the idle channel between the lookup and the lock
+                if (CHANNELS.get(user) != channel) {
+                    continue;
+                }
+                replay(channel, subscriber, client.ctx().header("Last-Event-ID"));
+                channel.clients.add(subscriber);
+            }
+            client.onClose(() -> disconnect(channel, subscriber));
+            return;
+        }
+    }
+
+    /**
+     * Whether the user currently has a stream open or recently had one. Callers check this before loading the data of
+     * an event, so writes of users without an open page cost nothing.
+     */
+    public static boolean isSubscribed(final int user) {
+        return CHANNELS.containsKey(user);
+    }
+
+    public static void publish(final int user, final String type, final Object data) {
+        final Channel channel = CHANNELS.get(user);
+        if (channel == null) {
+            return;
+        }
+        synchronized (channel) {
+            final Event event = new Event(SEQUENCE.incrementAndGet(), type, new Response(data));
+            channel.replay.addLast(event);
+            if (channel.replay.size() > REPLAY_SIZE) {
+                channel.droppedUpTo = channel.replay.removeFirst().seq();
+            }
+            for (final Subscriber subscriber : channel.clients) {
+                send(subscriber, event);
+            }
+        }
+    }
+
+    /**
+     * Sends the running timer and the month total to the user's streams. Nothing is loaded for users without one.
+     * The load runs on the loader pool; changes arriving while one is still queued for the user are covered by it.
+     */
+    public static void trackingChanged(final int user) {
+        if (!isSubscribed(user) || !PENDING_LOADS.add(user)) {
+            return;
+        }
+        LOADER.execute(() -> {
+            // removed before loading, so a change committed during the load queues another one
+            PENDING_LOADS.remove(user);
+            try {
+                publish(user, TRACKING, Database.getActiveTracking(user).orElse(null));
+                publish(user, MONTH, Database.getTrackedMinutesThisMonth(user));
+            } catch (final SQLException | RuntimeException e) {
+                logger.warn("could not load the tracking events of user {}", user, e);
+                publish(user, RESYNC, true);
+            }
+        });
+    }
+
+    public static void resyncAll() {
+        CHANNELS.keySet().forEach(user -> publish(user, RESYNC, true));
+    }
+
+    private static void replay(final Channel channel, final Subscriber subscriber, final String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return;
+        }
+        final long lastSeq = parseSequence(lastEventId);
+        if (lastSeq < channel.droppedUpTo) {
+            final String id = BOOT_ID + "-" + SEQUENCE.get();
+            subscriber.enqueue(client -> client.sendEvent(RESYNC, new Response(true), id));
+            return;
+        }
+        for (final Event event : channel.replay) {
+            if (event.seq() > lastSeq) {
+                send(subscriber, event);
+            }
+        }
+    }
+
+    private static long parseSequence(final String eventId) {
+        final int split = eventId.lastIndexOf('-');
+        if (split < 0 || !BOOT_ID.equals(eventId.substring(0, split))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(split + 1));
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void send(final Subscriber subscriber, final Event event) {
+        subscriber.enqueue(client -> client.sendEvent(event.type(), event.data(), event.id()));
+    }
+
+    private static void disconnect(final Channel channel, final Subscriber subscriber) {
+        synchronized (channel) {
+            if (channel.clients.remove(subscriber) && channel.clients.isEmpty()) {
+                channel.idleSince = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Keeps proxies from closing quiet streams and notices clients that went away without closing. Channels without a
+     * stream are kept a little longer so a reload or short network loss can still resume from the buffer.
+     */
+    private static void heartbeat() {
+        try {
+            final long now = System.nanoTime();
+            CHANNELS.forEach((user, channel) -> {
+                synchronized (channel) {
+                    channel.clients.forEach(subscriber -> subscriber.enqueue(client -> client.sendComment("heartbeat")));
+                    if (channel.clients.removeIf(Subscriber::isGone) && channel.clients.isEmpty()) {
+                        channel.idleSince = now;
+                    }
+                    if (channel.clients.isEmpty() && now - channel.idleSince > IDLE_CHANNEL_NANOS) {
+                        CHANNELS.remove(user, channel);
+                    }
+                }
+            });
+        } catch (final RuntimeException e) {
+            logger.warn("user event heartbeat failed", e);
+        }
+    }
+}
@@ -26,11 +26,17 @@ package de.OneManProjects.export;
  * #L%
  */
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
 
@@ -38,12 +44,21 @@ import de.OneManProjects.Database;
 import de.OneManProjects.data.Project;
 import de.OneManProjects.data.Tracked;
 import de.OneManProjects.data.dto.ExportFilter;
+import de.OneManProjects.database.RowHandler;
+import de.OneManProjects.database.TrackedRow;
+import de.OneManProjects.database.TrackedTotal;
+import de.OneManProjects.database.TrackingDimension;
+import de.OneManProjects.database.TrackingFilter;
+import de.OneManProjects.metrics.ExportEvent;
+import de.OneManProjects.utils.Util;
 
 public class Exporter {
 
     private static final String HEADERS_DETAILED = String.join(";", "Project", "Start", "End", "Duration hh::mm", "Description");
     private static final String HEADERS_GROUP_DETAILED = String.join(";", "Project", "Start", "End", "Duration hh::mm", "User", "Description");
     private static final String HEADERS = String.join(";", "Project", "Duration hh::mm", "Description");
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final boolean COPY_EXPORT = Util.getEnvVar("EXPORT_COPY_ENABLED", Boolean::parseBoolean, false).orElse(true);
 
     private static String formatDuration(final long duration) {
         final long hours = duration / 1000 / 60 / 60;
@@ -81,92 +96,153 @@ public class Exporter {
         return "Unknown";
     }
 
-    private static byte[] exportDetailedCsv(final List<Tracked> tracked, final List<Project> userProjects, final List<Project> groupProjects) {
-        final List<String> rows = tracked.stream().map(trackedItem -> {
-            final Optional<Project> p = userProjects.stream().filter(project -> project.getId() == trackedItem.getProjectId()).findFirst();
-            final Optional<Project> g = groupProjects.stream().filter(project -> project.getId() == trackedItem.getProjectId()).findFirst();
-            return String.format("%s,%s,%s,%s,%s",
-                getProjectTitle(p, g),
-                trackedItem.getStart().toString(),
-                trackedItem.getEnd().toString(),
-                getDuration(trackedItem),
-                getDescription(p, g));
-        }).toList();
-
-        final StringBuilder csvContent = new StringBuilder();
-        csvContent.append(HEADERS_DETAILED).append("\n");
-        rows.forEach(row -> csvContent.append(row).append("\n"));
-        return csvContent.toString().getBytes(StandardCharsets.UTF_8);
-    }
-
-    private static byte[] exportDetailedCsvforGroup(final List<Tracked> tracked, final List<Project> groupProjects) {
-        final List<String> rows = tracked.stream().map(trackedItem -> {
-            final Optional<Project> g = groupProjects.stream().filter(project -> project.getId() == trackedItem.getProjectId()).findFirst();
-            Optional<String> user;
-            try {
-                user = Database.getUserMail(trackedItem.getUser());
-            } catch (final SQLException e) {
-                user = Optional.empty();
-            }
-            return String.format("%s,%s,%s,%s,%s,%s",
+    private static void writeRow(final Writer writer, final String... columns) throws IOException {
+        writer.write(String.join(",", columns));
+        writer.write('\n');
+    }
+
+    private static RowHandler<Tracked> detailedRows(final Writer writer, final ProjectIndex userProjects, final ProjectIndex groupProjects) {
+        return trackedItem -> {
+            final Optional<Project> p = userProjects.get(trackedItem.getProjectId());
+            final Optional<Project> g = groupProjects.get(trackedItem.getProjectId());
+            writeRow(writer,
+                    getProjectTitle(p, g),
+                    trackedItem.getStart().toString(),
+                    trackedItem.getEnd().toString(),
+                    getDuration(trackedItem),
+                    getDescription(p, g));
+        };
+    }
+
+    private static RowHandler<TrackedRow> detailedGroupRows(final Writer writer, final ProjectIndex groupProjects) {
+        return row -> {
+            final Tracked trackedItem = row.tracked();
+            final Optional<Project> g = groupProjects.get(trackedItem.getProjectId());
+            writeRow(writer,
                     g.isPresent()? g.get().getTitle() : "Unknown",
                     trackedItem.getStart().toString(),
                     trackedItem.getEnd().toString(),
                     getDuration(trackedItem),
-                    user.orElse("Error Unkown"),
+                    row.userMail().orElse("Error Unkown"),
                     g.isPresent()? g.get().getDescription() : "Unknown");
-        }).toList();
+        };
+    }
 
-        final StringBuilder csvContent = new StringBuilder();
-        csvContent.append(HEADERS_GROUP_DETAILED).append("\n");
-        rows.forEach(row -> csvContent.append(row).append("\n"));
-        return csvContent.toString().getBytes(StandardCharsets.UTF_8);
+    private static void exportCsv(final Writer writer, final TrackingFilter trackingFilter, final ProjectIndex userProjects, final ProjectIndex groupProjects) throws SQLException, IOException {
+        writer.write(HEADERS);
+        writer.write('\n');
+        // only entries that lie fully inside the range count, the rollup only knows the day an entry started on
+        for (final TrackedTotal total : Database.sumTracked(trackingFilter, EnumSet.of(TrackingDimension.PROJECT))) {
+            final int projectId = total.project().orElseThrow();
+            final Optional<Project> p = userProjects.get(projectId);
+            final Optional<Project> g = groupProjects.get(projectId);
+            writeRow(writer,
+                    getProjectTitle(p, g),
+                    formatDuration(Math.round(total.seconds() * 1000)),
+                    p.isPresent() ? p.get().getDescription() : "Unknown");
+        }
     }
 
-    private static byte[] exportCsv(final List<Tracked> tracked, final List<Project> userProjects, final List<Project> groupProjects) {
-        final HashMap<Integer, Long> data = new HashMap<>();
-        for (final Tracked track : tracked) {
-            if (data.containsKey(track.getProjectId())) {
-                data.compute(track.getProjectId(), (k, old) -> old + track.getEnd().getTime() - track.getStart().getTime());
-            } else {
-                data.put(track.getProjectId(), track.getEnd().getTime() - track.getStart().getTime());
-            }
+    /**
+     * The export range includes its end, the totals query excludes it. Timestamps are stored with microsecond precision.
+     */
+    private static Instant inclusiveEnd(final Instant end) {
+        return end.plus(1, ChronoUnit.MICROS);
+    }
+
+    private static Writer openWriter(final OutputStream out) {
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+    }
+
+    private static void commit(final ExportEvent event, final String scope, final boolean detailed, final boolean copy, final CountingOutputStream counted) {
+        if (counted != null && event.shouldCommit()) {
+            event.scope = scope;
+            event.detailed = detailed;
+            event.copy = copy;
+            // every line but the header is a row
+            event.rows = Math.max(counted.lines() - 1, 0);
+            event.bytes = counted.bytes();
+            event.commit();
         }
+    }
 
-        final List<String> rows = data.entrySet().stream().map(entry -> {
-            final Optional<Project> p = userProjects.stream().filter(project -> project.getId() == entry.getKey()).findFirst();
-            final Optional<Project> g = groupProjects.stream().filter(project -> project.getId() == entry.getKey()).findFirst();
-            return String.format("%s,%s,%s",
-                    getProjectTitle(p, g),
-                    formatDuration(entry.getValue()),
-                    p.isPresent() ? p.get().getDescription() : "Unknown");
-        }).toList();
+    /**
+     * The response decides about compression on its first write and COPY hands over single rows,
+     * so the header and rows are collected in one buffer in front of it.
+     */
+    private static void copyDetailedGroupRows(final List<Integer> groupProjectIds, final Instant start, final Instant end, final OutputStream out) throws SQLException, IOException {
+        final OutputStream buffered = new BufferedOutputStream(out, WRITE_BUFFER_SIZE);
+        buffered.write((HEADERS_GROUP_DETAILED + "\n").getBytes(StandardCharsets.UTF_8));
+        Database.copyGroupTrackedForRange(groupProjectIds, start, end, buffered);
+        buffered.flush();
+    }
 
-        final StringBuilder csvContent = new StringBuilder();
-        csvContent.append(HEADERS).append("\n");
-        rows.forEach(row -> csvContent.append(row).append("\n"));
-        return csvContent.toString().getBytes(StandardCharsets.UTF_8);
+    /**
+     * Writes the user's export as CSV to the stream while the rows are read, so memory use does not grow with the range.
+     */
+    public static void exportUserData(final ExportFilter filter, final int userId, final OutputStream out) throws SQLException, IOException {
+        final ExportEvent event = new ExportEvent();
+        event.begin();
+        final CountingOutputStream counted = event.isEnabled() ? new CountingOutputStream(out) : null;
+        try {
+            writeUserData(filter, userId, counted != null ? counted : out);
+        } finally {
+            commit(event, "user", filter.detailed(), false, counted);
+        }
     }
 
-    public static byte[] exportUserData(final ExportFilter filter, final int userId) throws SQLException {
-        final List<Project> userProjects = Database.getProjects(userId, true);
-        final List<Project> groupProjects = Database.getUserGroupProjects(userId);
-        final List<Tracked> tracked = Database.getTrackedForRange(userId, Instant.parse(filter.filter().start()), Instant.parse(filter.filter().end()));
+    private static void writeUserData(final ExportFilter filter, final int userId, final OutputStream out) throws SQLException, IOException {
+        final ProjectIndex userProjects = ProjectIndex.of(Database.getProjects(userId, true));
+        final ProjectIndex groupProjects = ProjectIndex.of(Database.getUserGroupProjects(userId));
+        final Instant start = Instant.parse(filter.filter().start());
+        final Instant end = Instant.parse(filter.filter().end());
+        final Writer writer = openWriter(out);
         if (filter.detailed()) {
-            return exportDetailedCsv(tracked, userProjects, groupProjects);
+            writer.write(HEADERS_DETAILED);
+            writer.write('\n');
+            Database.streamTrackedForRange(userId, start, end, detailedRows(writer, userProjects, groupProjects));
         } else {
-            return exportCsv(tracked, userProjects, groupProjects);
+            exportCsv(writer, TrackingFilter.forUser(userId, start, inclusiveEnd(end)), userProjects, groupProjects);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes the group's export as CSV to the stream while the rows are read.
+     * Detailed rows are copied out of the database as finished CSV unless EXPORT_COPY_ENABLED is false.
+     */
+    public static void exportGroupData(final ExportFilter filter, final int groupId, final OutputStream out) throws SQLException, IOException {
+        final ExportEvent event = new ExportEvent();
+        event.begin();
+        final CountingOutputStream counted = event.isEnabled() ? new CountingOutputStream(out) : null;
+        try {
+            writeGroupData(filter, groupId, counted != null ? counted : out);
+        } finally {
+            commit(event, "group", filter.detailed(), filter.detailed() && COPY_EXPORT, counted);
         }
     }
 
-    public static byte[] exportGroupData(final ExportFilter filter, final int groupId) throws SQLException {
+    private static void writeGroupData(final ExportFilter filter, final int groupId, final OutputStream out) throws SQLException, IOException {
         final List<Project> groupProjects = Database.getGroupProjects(groupId, true);
         final List<Integer> groupProjectIds = groupProjects.stream().map(Project::getId).toList();
-        final List<Tracked> tracked = Database.getGroupTrackedForRange(groupProjectIds, Instant.parse(filter.filter().start()), Instant.parse(filter.filter().end()));
+        final Instant start = Instant.parse(filter.filter().start());
+        final Instant end = Instant.parse(filter.filter().end());
+        if (filter.detailed() && COPY_EXPORT) {
+            copyDetailedGroupRows(groupProjectIds, start, end, out);
+            return;
+        }
+        final Writer writer = openWriter(out);
         if (filter.detailed()) {
-            return exportDetailedCsvforGroup(tracked, groupProjects);
+            writer.write(HEADERS_GROUP_DETAILED);
+            writer.write('\n');
+            Database.streamGroupTrackedForRange(groupProjectIds, start, end, detailedGroupRows(writer, ProjectIndex.of(groupProjects)));
+        } else if (groupProjectIds.isEmpty()) {
+            // an empty project filter would select every project
+            writer.write(HEADERS);
+            writer.write('\n');
         } else {
-            return exportCsv(tracked, new ArrayList<>(), groupProjects);
+            exportCsv(writer, TrackingFilter.forProjects(groupProjectIds, start, inclusiveEnd(end)), ProjectIndex.of(List.of()), ProjectIndex.of(groupProjects));
         }
+        writer.flush();
     }
 }
@@ -0,0 +1,227 @@
+package de.OneManProjects.export;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import de.OneManProjects.data.Project;
+
+/**
+ * Reads tracking entries from a CSV in the detailed layout the {@link Exporter} writes and hands them on as rows of the
+ * PostgreSQL COPY text format: project, start, end and timezone separated by tabs. Lines are converted while the copy
+ * reads them, so memory use does not grow with the file. Columns may be quoted like the COPY based group export writes
+ * them, but the streaming exports leave titles with commas unquoted, so a line is split at the first two neighbouring
+ * timestamps, everything before them is the project title and everything after is ignored.
+ */
+public class Importer {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    private final BufferedReader in;
+    private final Map<String, Integer> projectIds = new HashMap<>();
+    private final String timezone;
+    private final List<String> errors = new ArrayList<>();
+    private int lineNumber;
+    private int accepted;
+    private int rejected;
+
+    /**
+     * @param projects projects the user may track, earlier ones win if titles repeat
+     */
+    public Importer(final InputStream csv, final List<Project> projects, final String timezone) {
+        this.in = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8), READ_BUFFER_SIZE);
+        this.timezone = timezone;
+        for (final Project project : projects) {
+            projectIds.putIfAbsent(project.getTitle().strip(), project.getId());
+        }
+    }
+
+    /**
+     * The accepted lines as COPY text rows, read lazily from the CSV.
+     */
+    public Reader copyRows() {
+        return new Reader() {
+            private String row = "";
+            private int position;
+
+            @Override
+            public int read(final char[] buffer, final int offset, final int length) throws IOException {
+                while (position >= row.length()) {
+                    final String next = nextRow();
+                    if (next == null) {
+                        return -1;
+                    }
+                    row = next;
+                    position = 0;
+                }
+                final int count = Math.min(length, row.length() - position);
+                row.getChars(position, position + count, buffer, offset);
+                position += count;
+                return count;
+            }
+
+            @Override
+            public void close() {
+                // the request body is closed by the server
+            }
+        };
+    }
+
+    public int accepted() {
+        return accepted;
+    }
+
+    public int rejected() {
+        return rejected;
+    }
+
+    public List<String> errors() {
+        return errors;
+    }
+
+    private String nextRow() throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || (lineNumber == 1 && line.startsWith("Project"))) {
+                continue;
+            }
+            final Optional<String> row = convert(line);
+            if (row.isPresent()) {
+                accepted++;
+                return row.get();
+            }
+        }
+        return null;
+    }
+
+    private Optional<String> convert(final String line) {
+        final String[] columns = split(line);
+        for (int i = 1; i + 1 < columns.length; i++) {
+            final Optional<Timestamp> start = parseTimestamp(columns[i]);
+            if (start.isEmpty()) {
+                continue;
+            }
+            final Optional<Timestamp> end = parseTimestamp(columns[i + 1]);
+            if (end.isEmpty()) {
+                return reject("the entry has no end");
+            }
+            if (end.get().before(start.get())) {
+                return reject("the entry ends before it starts");
+            }
+            final String title = String.join(",", Arrays.copyOfRange(columns, 0, i)).strip();
+            final Integer projectId = projectIds.getOrDefault(title, line.indexOf('"') < 0 ? null : projectIds.get(unquotedTitle(line)));
+            if (projectId == null) {
+                return reject("unknown project '" + title + "'");
+            }
+            return Optional.of(projectId + "\t" + start.get() + "\t" + end.get() + "\t" + timezone + "\n");
+        }
+        return reject("no start and end time found");
+    }
+
+    // the streaming exports write a title that starts with a quote as it is
+    private static String unquotedTitle(final String line) {
+        final String[] columns = line.split(",", -1);
+        for (int i = 1; i < columns.length; i++) {
+            if (parseTimestamp(columns[i]).isPresent()) {
+                return String.join(",", Arrays.copyOfRange(columns, 0, i)).strip();
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Splits at the commas outside of quotes. A column is quoted only if it starts with a quote, two quotes inside it
+     * stand for one. Quoted values spanning lines are not supported, an unterminated quote runs to the end of the line.
+     */
+    private static String[] split(final String line) {
+        final List<String> columns = new ArrayList<>();
+        final StringBuilder column = new StringBuilder();
+        int i = 0;
+        while (true) {
+            if (i < line.length() && line.charAt(i) == '"') {
+                i++;
+                while (i < line.length()) {
+                    final char c = line.charAt(i++);
+                    if (c != '"') {
+                        column.append(c);
+                    } else if (i < line.length() && line.charAt(i) == '"') {
+                        column.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+            }
+            final int comma = line.indexOf(',', i);
+            final int end = comma < 0 ? line.length() : comma;
+            column.append(line, i, end);
+            columns.add(column.toString());
+            column.setLength(0);
+            if (comma < 0) {
+                return columns.toArray(new String[0]);
+            }
+            i = comma + 1;
+        }
+    }
+
+    /**
+     * Parses the form {@link Timestamp#toString()} writes, in the server's timezone like the export.
+     */
+    private static Optional<Timestamp> parseTimestamp(final String column) {
+        final String value = column.strip();
+        if (value.length() < 19 || !Character.isDigit(value.charAt(0))) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Timestamp.valueOf(value));
+        } catch (final IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private Optional<String> reject(final String reason) {
+        rejected++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add("line " + lineNumber + ": " + reason);
+        }
+        return Optional.empty();
+    }
+}
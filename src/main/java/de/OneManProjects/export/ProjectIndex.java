@@ -0,0 +1,99 @@
+package de.OneManProjects.export;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import de.OneManProjects.data.Project;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Read-only lookup of projects by id, built once per export. Ids are kept in a primitive open addressing table,
+ * so a lookup per exported row neither scans the project list nor boxes the id.
+ */
+public final class ProjectIndex {
+
+    private static final int FREE = 0;
+
+    private final int[] keys;
+    private final Project[] values;
+    private final int mask;
+
+    private ProjectIndex(final int expected) {
+        final int capacity = Integer.highestOneBit(Math.max(2, expected * 2) - 1) << 1;
+        this.keys = new int[capacity];
+        this.values = new Project[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Indexes the given projects. When an id occurs twice the first project wins, like a linear search would.
+     */
+    public static ProjectIndex of(final List<Project> projects) {
+        final ProjectIndex index = new ProjectIndex(projects.size());
+        for (final Project project : projects) {
+            index.putIfAbsent(project);
+        }
+        return index;
+    }
+
+    public Optional<Project> get(final int id) {
+        // project ids come from a serial column and are never 0, which marks free slots
+        if (id == FREE) {
+            return Optional.empty();
+        }
+        int slot = slot(id);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == id) {
+                return Optional.of(values[slot]);
+            }
+            slot = (slot + 1) & mask;
+        }
+        return Optional.empty();
+    }
+
+    private void putIfAbsent(final Project project) {
+        final int id = project.getId();
+        if (id == FREE) {
+            return;
+        }
+        int slot = slot(id);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == id) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = id;
+        values[slot] = project;
+    }
+
+    private int slot(final int id) {
+        final int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
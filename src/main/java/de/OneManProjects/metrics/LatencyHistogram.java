@@ -0,0 +1,78 @@
+package de.OneManProjects.metrics;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram with power of two buckets in microseconds, from 32 microseconds up to about 33 seconds.
+ * Recording is one bucket increment and one sum addition, threads only contend inside the adders.
+ */
+public class LatencyHistogram {
+
+    private static final int MIN_EXPONENT = 5;
+    private static final int BUCKETS = 21;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS + 1];
+    private final LongAdder sumMicros = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(final long micros) {
+        // ceil(log2(micros)), the bucket bounds are inclusive
+        final int exponent = micros <= 1 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(micros - 1);
+        counts[Math.min(Math.max(exponent - MIN_EXPONENT, 0), BUCKETS)].increment();
+        sumMicros.add(Math.max(micros, 0));
+    }
+
+    /**
+     * Writes the histogram as cumulative buckets, the last bucket catches everything above the largest bound.
+     */
+    public void write(final PrometheusText text, final String name, final String... labels) {
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i].sum();
+            final String le = i < BUCKETS ? BigDecimal.valueOf(1L << (i + MIN_EXPONENT), 6).stripTrailingZeros().toPlainString() : "+Inf";
+            text.sample(name + "_bucket", cumulative, append(labels, "le", le));
+        }
+        text.sample(name + "_sum", sumMicros.sum() / 1_000_000.0, labels);
+        text.sample(name + "_count", cumulative, labels);
+    }
+
+    private static String[] append(final String[] labels, final String name, final String value) {
+        final String[] result = new String[labels.length + 2];
+        System.arraycopy(labels, 0, result, 0, labels.length);
+        result[labels.length] = name;
+        result[labels.length + 1] = value;
+        return result;
+    }
+}
@@ -0,0 +1,200 @@
+package de.OneManProjects.metrics;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import de.OneManProjects.security.ApiTokenCache;
+import de.OneManProjects.security.PasswordHasher;
+import de.OneManProjects.utils.Util;
+import io.javalin.http.Context;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request metrics per route and JVM stats, scraped in the Prometheus text format.
+ * Matched requests are labeled with their route pattern, everything else (static files, unknown paths,
+ * requests rejected before matching) is counted as route "unmatched" so the label set stays bounded.
+ */
+public class Metrics {
+
+    private static final String ROUTE_ATTRIBUTE = "metrics-route";
+    private static final String QUERIES_ATTRIBUTE = "metrics-queries";
+    private static final String QUERY_COUNT_HEADER = "X-Query-Count";
+    private static final String UNMATCHED = "unmatched";
+    // placeholders like <CHANGE_ME> from an example file count as not configured
+    private static final Optional<String> TOKEN = Util.getEnvVar("METRICS_TOKEN", s -> s, false)
+            .filter(s -> !s.isBlank() && !(s.startsWith("<") && s.endsWith(">")));
+
+    private static final Map<String, Route> ROUTES = new ConcurrentHashMap<>();
+
+    private static class Route {
+        private final String method;
+        private final String path;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final Map<Integer, LongAdder> statuses = new ConcurrentSkipListMap<>();
+        private final LongAdder inFlight = new LongAdder();
+        private final LongAdder queries = new LongAdder();
+
+        private Route(final String method, final String path) {
+            this.method = method;
+            this.path = path;
+        }
+    }
+
+    private static Route route(final String method, final String path) {
+        return ROUTES.computeIfAbsent(method + ' ' + path, k -> new Route(method, path));
+    }
+
+    /**
+     * Runs once an endpoint matched, before its handler.
+     */
+    public static void requestMatched(final Context ctx) {
+        final String path = ctx.endpointHandlerPath();
+        final Route route = route(ctx.method().name(), path.startsWith("/") ? path : "/" + path);
+        route.inFlight.increment();
+        ctx.attribute(ROUTE_ATTRIBUTE, route);
+        ctx.attribute(QUERIES_ATTRIBUTE, QueryMetrics.beginRequest());
+    }
+
+    /**
+     * Runs after the handler of a matched endpoint. Streamed responses are already committed and keep their headers.
+     */
+    public static void requestHandled(final Context ctx) {
+        final LongAdder queries = ctx.attribute(QUERIES_ATTRIBUTE);
+        if (queries != null && !ctx.res().isCommitted()) {
+            ctx.header(QUERY_COUNT_HEADER, String.valueOf(queries.sum()));
+        }
+    }
+
+    /**
+     * Runs after every request, the time is measured by javalin from the start of the request.
+     */
+    public static void requestFinished(final Context ctx, final Float executionTimeMs) {
+        Route route = ctx.attribute(ROUTE_ATTRIBUTE);
+        if (route != null) {
+            route.inFlight.decrement();
+            route.queries.add(QueryMetrics.endRequest(ctx.attribute(QUERIES_ATTRIBUTE)));
+        } else {
+            route = route(ctx.method().name(), UNMATCHED);
+        }
+        route.latency.record(Math.round(executionTimeMs * 1000.0));
+        route.statuses.computeIfAbsent(ctx.statusCode(), k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Scrapes are allowed with the bearer token from METRICS_TOKEN. Without a configured token only admins may scrape.
+     */
+    public static boolean isScrapeToken(final String authorization) {
+        if (TOKEN.isEmpty() || authorization == null || !authorization.startsWith("Bearer ")) {
+            return false;
+        }
+        return MessageDigest.isEqual(TOKEN.get().getBytes(StandardCharsets.UTF_8), authorization.substring(7).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String scrape() {
+        final PrometheusText text = new PrometheusText();
+        writeRoutes(text);
+        QueryMetrics.write(text);
+        writeSecurity(text);
+        writeJvm(text);
+        return text.toString();
+    }
+
+    private static void writeRoutes(final PrometheusText text) {
+        text.family("klukka_http_request_duration_seconds", "histogram", "Time from receiving a request until its response is complete.");
+        ROUTES.values().forEach(r -> r.latency.write(text, "klukka_http_request_duration_seconds", "method", r.method, "route", r.path));
+        text.family("klukka_http_requests_total", "counter", "Finished requests by response status.");
+        ROUTES.values().forEach(r -> r.statuses.forEach((status, count) ->
+                text.sample("klukka_http_requests_total", count.sum(), "method", r.method, "route", r.path, "status", String.valueOf(status))));
+        text.family("klukka_http_request_queries_total", "counter", "Statements executed while handling requests, divided by the request count it gives queries per request.");
+        ROUTES.values().stream().filter(r -> !r.path.equals(UNMATCHED)).forEach(r ->
+                text.sample("klukka_http_request_queries_total", r.queries.sum(), "method", r.method, "route", r.path));
+        text.family("klukka_http_requests_in_flight", "gauge", "Requests currently being handled, open event streams included.");
+        ROUTES.values().stream().filter(r -> !r.path.equals(UNMATCHED)).forEach(r ->
+                text.sample("klukka_http_requests_in_flight", r.inFlight.sum(), "method", r.method, "route", r.path));
+    }
+
+    private static void writeSecurity(final PrometheusText text) {
+        text.family("klukka_password_hash_queue_depth", "gauge", "Password hashes waiting for a hashing thread.")
+                .sample("klukka_password_hash_queue_depth", PasswordHasher.queueDepth());
+        text.family("klukka_password_hash_active", "gauge", "Password hashes currently being computed.")
+                .sample("klukka_password_hash_active", PasswordHasher.activeCount());
+        text.family("klukka_password_hash_completed_total", "counter", "Password hashes and verifications completed.")
+                .sample("klukka_password_hash_completed_total", PasswordHasher.completedCount());
+        text.family("klukka_password_hash_rejected_total", "counter", "Password hashes rejected because the queue was full.")
+                .sample("klukka_password_hash_rejected_total", PasswordHasher.rejectedCount());
+        text.family("klukka_api_token_cache_hits_total", "counter", "API token lookups answered from the cache.")
+                .sample("klukka_api_token_cache_hits_total", ApiTokenCache.hits());
+        text.family("klukka_api_token_cache_misses_total", "counter", "API token lookups that went to the database.")
+                .sample("klukka_api_token_cache_misses_total", ApiTokenCache.misses());
+        text.family("klukka_api_token_cache_evictions_total", "counter", "API tokens removed from the cache.")
+                .sample("klukka_api_token_cache_evictions_total", ApiTokenCache.evictions());
+        text.family("klukka_api_token_cache_size", "gauge", "API tokens currently cached.")
+                .sample("klukka_api_token_cache_size", ApiTokenCache.size());
+    }
+
+    private static void writeJvm(final PrometheusText text) {
+        final MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        final MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        text.family("jvm_memory_used_bytes", "gauge", "Used JVM memory.")
+                .sample("jvm_memory_used_bytes", heap.getUsed(), "area", "heap")
+                .sample("jvm_memory_used_bytes", nonHeap.getUsed(), "area", "nonheap");
+        text.family("jvm_memory_committed_bytes", "gauge", "Committed JVM memory.")
+                .sample("jvm_memory_committed_bytes", heap.getCommitted(), "area", "heap")
+                .sample("jvm_memory_committed_bytes", nonHeap.getCommitted(), "area", "nonheap");
+        text.family("jvm_memory_max_bytes", "gauge", "Maximum JVM memory, -1 when undefined.")
+                .sample("jvm_memory_max_bytes", heap.getMax(), "area", "heap")
+                .sample("jvm_memory_max_bytes", nonHeap.getMax(), "area", "nonheap");
+
+        text.family("jvm_gc_collection_seconds", "summary", "Time spent in garbage collections by collector.");
+        for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            text.sample("jvm_gc_collection_seconds_count", gc.getCollectionCount(), "gc", gc.getName());
+            text.sample("jvm_gc_collection_seconds_sum", gc.getCollectionTime() / 1000.0, "gc", gc.getName());
+        }
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        text.family("jvm_threads_current", "gauge", "Live threads.")
+                .sample("jvm_threads_current", threads.getThreadCount());
+        text.family("jvm_threads_daemon", "gauge", "Live daemon threads.")
+                .sample("jvm_threads_daemon", threads.getDaemonThreadCount());
+        text.family("jvm_threads_peak", "gauge", "Peak live threads since start.")
+                .sample("jvm_threads_peak", threads.getPeakThreadCount());
+        text.family("jvm_classes_loaded", "gauge", "Currently loaded classes.")
+                .sample("jvm_classes_loaded", ManagementFactory.getClassLoadingMXBean().getLoadedClassCount());
+        text.family("process_start_time_seconds", "gauge", "Start time of the process since the epoch.")
+                .sample("process_start_time_seconds", ManagementFactory.getRuntimeMXBean().getStartTime() / 1000.0);
+    }
+}
@@ -0,0 +1,195 @@
+package de.OneManProjects.metrics;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import de.OneManProjects.utils.Util;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Statement timings by query fingerprint, connection acquire times and the number of queries each request ran.
+ * A fingerprint is the statement with literals replaced and whitespace collapsed, so ids written into a statement
+ * do not create new series.
+ */
+public class QueryMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryMetrics.class);
+    private static final long SLOW_QUERY_NANOS = TimeUnit.MILLISECONDS.toNanos(Util.getEnvVar("SLOW_QUERY_MS", Long::parseLong, false).orElse(500L));
+    private static final int MAX_FINGERPRINTS = 1000;
+    private static final int LABEL_LENGTH = 120;
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final Map<String, Query> BY_SQL = new ConcurrentHashMap<>();
+    private static final Map<String, Query> BY_FINGERPRINT = new ConcurrentHashMap<>();
+    private static final Query OTHER = new Query("other", "other", 0);
+    private static final LatencyHistogram ACQUIRE = new LatencyHistogram();
+    private static final LongAdder ACQUIRE_ERRORS = new LongAdder();
+    private static final ThreadLocal<LongAdder> REQUEST_QUERIES = new ThreadLocal<>();
+
+    static {
+        BY_FINGERPRINT.put(OTHER.id, OTHER);
+    }
+
+    public static class Query {
+        private final String id;
+        private final String text;
+        private final int parameters;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        private Query(final String id, final String text, final int parameters) {
+            this.id = id;
+            this.text = text;
+            this.parameters = parameters;
+        }
+
+        public String fingerprint() {
+            return id;
+        }
+
+        public String text() {
+            return text;
+        }
+
+        public void executed(final long nanos) {
+            latency.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+            final LongAdder requestQueries = REQUEST_QUERIES.get();
+            if (requestQueries != null) {
+                requestQueries.increment();
+            }
+            if (SLOW_QUERY_NANOS >= 0 && nanos > SLOW_QUERY_NANOS) {
+                logger.warn("slow query fingerprint={} duration_ms={} parameters={} query=\"{}\"",
+                        id, TimeUnit.NANOSECONDS.toMillis(nanos), parameters, text);
+            }
+        }
+
+        public void rows(final long count) {
+            rows.add(count);
+        }
+
+        public void failed() {
+            errors.increment();
+        }
+    }
+
+    /**
+     * Looks up the metrics of a statement, the fingerprint is computed once per distinct SQL string.
+     */
+    public static Query query(final String sql) {
+        if (sql == null) {
+            return OTHER;
+        }
+        final Query known = BY_SQL.get(sql);
+        if (known != null) {
+            return known;
+        }
+        final String text = fingerprint(sql);
+        final String id = String.format("%08x", text.hashCode());
+        final Query query = BY_FINGERPRINT.size() < MAX_FINGERPRINTS
+                ? BY_FINGERPRINT.computeIfAbsent(id, k -> new Query(id, text, countParameters(sql)))
+                : BY_FINGERPRINT.getOrDefault(id, OTHER);
+        if (BY_SQL.size() < MAX_FINGERPRINTS * 4) {
+            BY_SQL.put(sql, query);
+        }
+        return query;
+    }
+
+    static String fingerprint(final String sql) {
+        String text = STRING_LITERAL.matcher(sql).replaceAll("?");
+        text = NUMBER_LITERAL.matcher(text).replaceAll("?");
+        text = PARAMETER_LIST.matcher(text).replaceAll("?");
+        return WHITESPACE.matcher(text).replaceAll(" ").trim();
+    }
+
+    private static int countParameters(final String sql) {
+        int count = 0;
+        boolean quoted = false;
+        for (int i = 0; i < sql.length(); i++) {
+            final char c = sql.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (c == '?' && !quoted) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static void connectionAcquired(final long nanos) {
+        ACQUIRE.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public static void connectionFailed() {
+        ACQUIRE_ERRORS.increment();
+    }
+
+    /**
+     * Starts counting the statements the current thread executes for a request.
+     */
+    public static LongAdder beginRequest() {
+        final LongAdder counter = new LongAdder();
+        REQUEST_QUERIES.set(counter);
+        return counter;
+    }
+
+    /**
+     * Stops counting for the request, async requests may finish on another thread than they started on.
+     */
+    public static long endRequest(final LongAdder counter) {
+        if (REQUEST_QUERIES.get() == counter) {
+            REQUEST_QUERIES.remove();
+        }
+        return counter.sum();
+    }
+
+    public static void write(final PrometheusText text) {
+        text.family("klukka_db_query_duration_seconds", "histogram", "Statement execution time until the first rows or the update count arrived, for COPY until all rows were transferred.");
+        BY_FINGERPRINT.values().forEach(q -> q.latency.write(text, "klukka_db_query_duration_seconds", "fingerprint", q.id, "query", label(q.text)));
+        text.family("klukka_db_query_rows_total", "counter", "Rows changed by updates or copied, and rows read by the readers of row lists and streams.");
+        BY_FINGERPRINT.values().forEach(q -> text.sample("klukka_db_query_rows_total", q.rows.sum(), "fingerprint", q.id, "query", label(q.text)));
+        text.family("klukka_db_query_errors_total", "counter", "Statement executions that failed.");
+        BY_FINGERPRINT.values().forEach(q -> text.sample("klukka_db_query_errors_total", q.errors.sum(), "fingerprint", q.id, "query", label(q.text)));
+        text.family("klukka_db_connection_acquire_seconds", "histogram", "Time to borrow a connection from the pool.");
+        ACQUIRE.write(text, "klukka_db_connection_acquire_seconds");
+        text.family("klukka_db_connection_acquire_errors_total", "counter", "Connections that could not be borrowed.")
+                .sample("klukka_db_connection_acquire_errors_total", ACQUIRE_ERRORS.sum());
+    }
+
+    private static String label(final String text) {
+        return text.length() <= LABEL_LENGTH ? text : text.substring(0, LABEL_LENGTH) + "...";
+    }
+}
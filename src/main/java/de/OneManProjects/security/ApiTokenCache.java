@@ -0,0 +1,143 @@
+package de.OneManProjects.security;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import de.OneManProjects.Database;
+import de.OneManProjects.utils.Util;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, expiring cache of API tokens so bearer requests do not hit the token table on every call.
+ * Entries are keyed by the SHA-256 digest of the token, the plain token is never kept.
+ * Every invalidation takes a new generation, a load that started before the invalidation of its user is not cached,
+ * so a token row read just before its deletion committed cannot outlive the deletion in the cache.
+ */
+public class ApiTokenCache {
+
+    public record CachedToken(int user, Optional<Timestamp> expiration, long loadedAtNanos) {
+    }
+
+    private static final int MAX_ENTRIES = Util.getEnvVar("API_TOKEN_CACHE_SIZE", Integer::parseInt, false).orElse(10_000);
+    private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(Util.getEnvVar("API_TOKEN_CACHE_TTL_SEC", Long::parseLong, false).orElse(300L));
+
+    private static final Map<String, CachedToken> CACHE = new ConcurrentHashMap<>();
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+    private static final AtomicLong GENERATION = new AtomicLong();
+    private static final AtomicLong CLEARED = new AtomicLong();
+    private static final Map<Integer, Long> INVALIDATED = new ConcurrentHashMap<>();
+
+    private ApiTokenCache() {
+    }
+
+    /**
+     * Looks up an API token, loading it from the database on a miss. Tokens of other types are never cached or returned.
+     */
+    public static Optional<CachedToken> get(final String token) throws SQLException {
+        final String digest = Util.sha256(token);
+        final CachedToken cached = CACHE.get(digest);
+        if (cached != null && System.nanoTime() - cached.loadedAtNanos() < TTL_NANOS) {
+            HITS.increment();
+            return Optional.of(cached);
+        }
+        MISSES.increment();
+        final long generation = GENERATION.get();
+        final Optional<UserToken> loaded = Database.getToken(token);
+        if (loaded.isEmpty() || !loaded.get().tokentype().equals(TokenType.API_TOKEN)) {
+            CACHE.remove(digest);
+            return Optional.empty();
+        }
+        final CachedToken entry = new CachedToken(loaded.get().user(), loaded.get().expiration(), System.nanoTime());
+        if (invalidatedSince(entry.user(), generation)) {
+            return Optional.of(entry);
+        }
+        if (CACHE.size() >= MAX_ENTRIES) {
+            evict();
+        }
+        CACHE.put(digest, entry);
+        // an invalidation between the check and the put may have missed the entry
+        if (invalidatedSince(entry.user(), generation)) {
+            CACHE.remove(digest, entry);
+        }
+        return Optional.of(entry);
+    }
+
+    public static void invalidateUser(final int user) {
+        INVALIDATED.merge(user, GENERATION.incrementAndGet(), Math::max);
+        CACHE.values().removeIf(entry -> entry.user() == user);
+    }
+
+    public static void clear() {
+        CLEARED.set(GENERATION.incrementAndGet());
+        INVALIDATED.clear();
+        CACHE.clear();
+    }
+
+    private static boolean invalidatedSince(final int user, final long generation) {
+        return CLEARED.get() > generation || INVALIDATED.getOrDefault(user, 0L) > generation;
+    }
+
+    private static void evict() {
+        final long now = System.nanoTime();
+        CACHE.values().removeIf(entry -> now - entry.loadedAtNanos() >= TTL_NANOS);
+        // still full: drop an arbitrary tenth, they will simply be reloaded on their next use
+        final Iterator<CachedToken> it = CACHE.values().iterator();
+        int toDrop = CACHE.size() >= MAX_ENTRIES ? Math.max(1, MAX_ENTRIES / 10) : 0;
+        while (toDrop > 0 && it.hasNext()) {
+            it.next();
+            it.remove();
+            EVICTIONS.increment();
+            toDrop--;
+        }
+    }
+
+    public static long hits() {
+        return HITS.sum();
+    }
+
+    public static long misses() {
+        return MISSES.sum();
+    }
+
+    public static long evictions() {
+        return EVICTIONS.sum();
+    }
+
+    public static int size() {
+        return CACHE.size();
+    }
+}
@@ -26,11 +26,11 @@ package de.OneManProjects.security;
  * #L%
  */
 
-import at.favre.lib.crypto.bcrypt.BCrypt;
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.Claim;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import de.OneManProjects.Database;
 import de.OneManProjects.data.dto.Login;
@@ -56,19 +56,22 @@ public class Auth {
     public final static int JWT_LIFETIME_SEC = 3600 * 5;
     public final static int REFRESH_LIFETIME_SEC = 7 * 24 * 3600;
 
-    private static Algorithm getAlgorithm() {
-        //For testing only should create one at startup new
-        return Algorithm.HMAC256("ofrqR3H0VG^xIZLnfYtP8WNn968n8@uX3xfZd%EA1S0Z@1");
-    }
+    public static final String PRINCIPAL_ATTRIBUTE = "principal";
+    static final String ROLES_CLAIM = "roles";
+    static final String ROLE_VERSION_CLAIM = "rv";
+
+    //For testing only should create one at startup new
+    private static final Algorithm ALGORITHM = Algorithm.HMAC256("ofrqR3H0VG^xIZLnfYtP8WNn968n8@uX3xfZd%EA1S0Z@1");
+    // JWTVerifier is immutable and thread safe, so one instance serves all requests
+    private static final JWTVerifier VERIFIER = JWT.require(ALGORITHM)
+            .withIssuer(ISSUER)
+            .withClaimPresence("user")
+            .build();
 
-    private static Optional<DecodedJWT> validateAndDecodeToken(final String token) {
+    static Optional<DecodedJWT> validateAndDecodeToken(final String token) {
         if (token != null) {
-            final JWTVerifier verifier = JWT.require(getAlgorithm())
-                    .withIssuer(ISSUER)
-                    .withClaimPresence("user")
-                    .build();
             try {
-                return Optional.of(verifier.verify(token));
+                return Optional.of(VERIFIER.verify(token));
             } catch (final JWTVerificationException e) {
                 return Optional.empty();
             }
@@ -77,7 +80,9 @@ public class Auth {
     }
 
     public static void setCookies(final Context ctx, final int userID) throws SQLException {
-        final String token = Auth.genJWT(userID);
+        final RoleClaims claims = Database.getRoleClaims(userID);
+        RoleVersions.advance(userID, claims.version());
+        final String token = Auth.genJWT(userID, claims.roles(), claims.version());
         final String refreshToken= Auth.genRefreshToken(userID);
         final Cookie ct = new Cookie("jwt", token);
         final Cookie cr = new Cookie("refresh", refreshToken);
@@ -97,15 +102,12 @@ public class Auth {
     }
 
     public static String hashPassword(final String password) {
-        return BCrypt.withDefaults().hashToString(12, password.toCharArray());
+        return PasswordHasher.hash(password);
     }
 
     public static boolean login(final Login login) throws SQLException {
         final Optional<String> optionalString = Database.getUserHash(login.mail());
-        return optionalString.filter(s ->
-                BCrypt.verifyer()
-                    .verify(login.password().toCharArray(), s)
-                    .verified).isPresent();
+        return optionalString.filter(s -> PasswordHasher.verify(login.password(), s)).isPresent();
     }
 
     public static String genJWT(final int user) {
@@ -113,7 +115,17 @@ public class Auth {
                 .withClaim("user", user)
                 .withExpiresAt(Instant.now().plus(JWT_LIFETIME_SEC, ChronoUnit.SECONDS))
                 .withIssuer(ISSUER)
-                .sign(getAlgorithm());
+                .sign(ALGORITHM);
+    }
+
+    public static String genJWT(final int user, final List<Role> roles, final int roleVersion) {
+        return JWT.create()
+                .withClaim("user", user)
+                .withClaim(ROLES_CLAIM, roles.stream().map(Role::name).toList())
+                .withClaim(ROLE_VERSION_CLAIM, roleVersion)
+                .withExpiresAt(Instant.now().plus(JWT_LIFETIME_SEC, ChronoUnit.SECONDS))
+                .withIssuer(ISSUER)
+                .sign(ALGORITHM);
     }
 
     public static String genRefreshToken(final int user) throws SQLException {
@@ -122,28 +134,74 @@ public class Auth {
         return refreshToken;
     }
 
-    public static boolean validateToken(final Context ctx) {
+    /**
+     * Resolves the caller from the session cookie or the API token header and keeps the result on the context,
+     * so the token is only verified once per request.
+     */
+    public static Optional<Principal> authenticate(final Context ctx) {
+        final Optional<Principal> principal = resolvePrincipal(ctx);
+        principal.ifPresent(p -> ctx.attribute(PRINCIPAL_ATTRIBUTE, p));
+        return principal;
+    }
+
+    private static Optional<Principal> resolvePrincipal(final Context ctx) {
         if (ctx.cookieMap().containsKey("jwt")) {
             final String token = ctx.cookie("jwt");
-            return validateAndDecodeToken(token).isPresent();
+            final Optional<DecodedJWT> jwt = validateAndDecodeToken(token);
+            if (jwt.isPresent()) {
+                try {
+                    return principalFromJwt(jwt.get());
+                } catch (final SQLException e) {
+                    return Optional.empty();
+                }
+            }
         } else {
             final String apiToken = ctx.header("Authorization");
             if (apiToken != null) {
                 try {
-                    final Optional<UserToken> token = Database.getToken(apiToken.replace("Bearer ", ""));
+                    final Optional<ApiTokenCache.CachedToken> token = ApiTokenCache.get(apiToken.replace("Bearer ", ""));
                     if (token.isPresent()) {
                         if (token.get().expiration().isPresent()) {
                             final Timestamp currentTimeStamp = Timestamp.from(Instant.now());
-                            return currentTimeStamp.before(token.get().expiration().get());
+                            if (!currentTimeStamp.before(token.get().expiration().get())) {
+                                return Optional.empty();
+                            }
                         }
-                        return true;
+                        return Optional.of(new Principal(token.get().user(), TokenType.API_TOKEN));
                     }
                 } catch (final SQLException e) {
-                    return false;
+                    return Optional.empty();
                 }
             }
         }
-        return false;
+        return Optional.empty();
+    }
+
+    private static Optional<Principal> principalFromJwt(final DecodedJWT jwt) throws SQLException {
+        final int user = jwt.getClaim("user").asInt();
+        final Claim roleVersion = jwt.getClaim(ROLE_VERSION_CLAIM);
+        if (roleVersion.isMissing() || roleVersion.isNull()) {
+            // token issued without role claims, roles are loaded on demand
+            return Optional.of(new Principal(user, TokenType.JWT));
+        }
+        if (roleVersion.asInt() != RoleVersions.current(user)) {
+            // roles changed since the token was issued, the client has to refresh it
+            return Optional.empty();
+        }
+        final List<Role> roles = jwt.getClaim(ROLES_CLAIM).asList(String.class).stream().map(Role::valueOf).toList();
+        return Optional.of(new Principal(user, TokenType.JWT, roles));
+    }
+
+    public static Optional<Principal> getPrincipal(final Context ctx) {
+        final Principal principal = ctx.attribute(PRINCIPAL_ATTRIBUTE);
+        if (principal != null) {
+            return Optional.of(principal);
+        }
+        return authenticate(ctx);
+    }
+
+    public static boolean validateToken(final Context ctx) {
+        return authenticate(ctx).isPresent();
     }
 
     public static Optional<Integer> validateRefreshToken(final String refreshToken) throws SQLException {
@@ -160,40 +218,22 @@ public class Auth {
     }
 
     public static int getUserFromContext(final Context ctx) {
-        if (ctx.cookieMap().containsKey("jwt")) {
-            final String token = ctx.cookie("jwt");
-            final Optional<DecodedJWT> decodedJWT = validateAndDecodeToken(token);
-            if (decodedJWT.isPresent()) {
-                return decodedJWT.get().getClaim("user").asInt();
-            }
-        } else {
-            final String apiToken = ctx.header("Authorization");
-            if (apiToken != null) {
-                try {
-                    final Optional<UserToken> token = Database.getToken(apiToken.replace("Bearer ", ""));
-                    if (token.isPresent()) {
-                        return token.get().user();
-                    }
-                } catch (final SQLException e) {
-                    ctx.status(HttpStatus.BAD_REQUEST);
-                    return -1;
-                }
-            }
+        final Optional<Principal> principal = getPrincipal(ctx);
+        if (principal.isPresent()) {
+            return principal.get().getUserId();
         }
         ctx.status(HttpStatus.BAD_REQUEST);
         return -1;
     }
 
     public static boolean isUserAdmin(final Context ctx) throws SQLException {
-        final int userId = getUserFromContext(ctx);
-        final List<Role> roles = Database.getUserRoles(userId);
-        return roles.contains(Role.ADMIN);
+        final Optional<Principal> principal = getPrincipal(ctx);
+        return principal.isPresent() && principal.get().hasRole(Role.ADMIN);
     }
 
     public static boolean isUserGroup(final Context ctx) throws SQLException {
-        final int userId = getUserFromContext(ctx);
-        final List<Role> roles = Database.getUserRoles(userId);
-        return roles.contains(Role.GROUP) || roles.contains(Role.ADMIN);
+        final Optional<Principal> principal = getPrincipal(ctx);
+        return principal.isPresent() && (principal.get().hasRole(Role.GROUP) || principal.get().hasRole(Role.ADMIN));
     }
 
     public static String generateApiToken() throws IllegalStateException {
@@ -0,0 +1,116 @@
+package de.OneManProjects.security;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import at.favre.lib.crypto.bcrypt.BCrypt;
+import de.OneManProjects.utils.Util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs bcrypt on a small CPU-sized pool with a bounded queue, so a burst of logins cannot occupy every request thread.
+ * When the queue is full the work is rejected right away with a {@link RejectedExecutionException}.
+ */
+public class PasswordHasher {
+
+    private static final int COST = 12;
+    private static final int THREADS = Util.getEnvVar("PASSWORD_HASH_THREADS", Integer::parseInt, false)
+            .orElse(Runtime.getRuntime().availableProcessors());
+    private static final int QUEUE_SIZE = Util.getEnvVar("PASSWORD_HASH_QUEUE_SIZE", Integer::parseInt, false)
+            .orElse(THREADS * 16);
+
+    private static final LongAdder REJECTED = new LongAdder();
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            THREADS, THREADS, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(QUEUE_SIZE),
+            daemonThreads(),
+            (task, executor) -> {
+                REJECTED.increment();
+                throw new RejectedExecutionException("password hashing queue is full");
+            });
+
+    private PasswordHasher() {
+    }
+
+    public static String hash(final String password) {
+        return run(() -> BCrypt.withDefaults().hashToString(COST, password.toCharArray()));
+    }
+
+    public static boolean verify(final String password, final String hash) {
+        return run(() -> BCrypt.verifyer().verify(password.toCharArray(), hash).verified);
+    }
+
+    public static int queueDepth() {
+        return EXECUTOR.getQueue().size();
+    }
+
+    public static int activeCount() {
+        return EXECUTOR.getActiveCount();
+    }
+
+    public static long completedCount() {
+        return EXECUTOR.getCompletedTaskCount();
+    }
+
+    public static long rejectedCount() {
+        return REJECTED.sum();
+    }
+
+    private static <T> T run(final Callable<T> task) {
+        final Future<T> future = EXECUTOR.submit(task);
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for password hashing", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        final AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, "password-hasher-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,75 @@
+package de.OneManProjects.security;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import de.OneManProjects.Database;
+import de.OneManProjects.data.enums.Role;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * The authenticated caller of a request, resolved once by {@link Auth#authenticate} and kept on the context.
+ * Roles are only loaded when a handler asks for them.
+ */
+public final class Principal {
+    private final int userId;
+    private final TokenType tokenType;
+    private volatile List<Role> roles;
+
+    public Principal(final int userId, final TokenType tokenType) {
+        this.userId = userId;
+        this.tokenType = tokenType;
+    }
+
+    public Principal(final int userId, final TokenType tokenType, final List<Role> roles) {
+        this.userId = userId;
+        this.tokenType = tokenType;
+        this.roles = List.copyOf(roles);
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public TokenType getTokenType() {
+        return tokenType;
+    }
+
+    public List<Role> getRoles() throws SQLException {
+        List<Role> loaded = roles;
+        if (loaded == null) {
+            loaded = List.copyOf(Database.getUserRoles(userId));
+            roles = loaded;
+        }
+        return loaded;
+    }
+
+    public boolean hasRole(final Role role) throws SQLException {
+        return getRoles().contains(role);
+    }
+}
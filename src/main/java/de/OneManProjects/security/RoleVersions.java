@@ -0,0 +1,67 @@
+package de.OneManProjects.security;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import de.OneManProjects.Database;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cached copy of each user's role version. A session JWT carries the version its role claims were issued with,
+ * once {@link Database#updateUserRole} bumps the version the token is rejected and has to be refreshed.
+ * The cached version only ever moves forward: a load that read the version before a concurrent bump cannot put the
+ * old value back over the one the role change delivered.
+ */
+public class RoleVersions {
+
+    private static final Map<Integer, Integer> VERSIONS = new ConcurrentHashMap<>();
+
+    private RoleVersions() {
+    }
+
+    public static int current(final int user) throws SQLException {
+        final Integer cached = VERSIONS.get(user);
+        if (cached != null) {
+            return cached;
+        }
+        return VERSIONS.merge(user, Database.getRoleVersion(user), Math::max);
+    }
+
+    public static void advance(final int user, final int version) {
+        VERSIONS.merge(user, version, Math::max);
+    }
+
+    public static void evict(final int user) {
+        VERSIONS.remove(user);
+    }
+
+    public static void clear() {
+        VERSIONS.clear();
+    }
+}
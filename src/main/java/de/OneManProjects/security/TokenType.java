@@ -27,6 +27,8 @@ package de.OneManProjects.security;
  */
 
 public enum TokenType {
+    // session JWT handed out as cookie, never stored in the token table
+    JWT(0),
     API_TOKEN(1),
     RESET_TOKEN(2),
     REFRESH_TOKEN(3);
@@ -24,7 +24,7 @@
  * #L%
  */
 import { AnalysisData, Tracked } from "./datatypes/final";
-import { AdminData, Login, Project, Role, Start, User, UserProjects, Group, GroupDetails, GroupToUser, IdTupel, DataFilter, ExportFilter, UserData, PasswordReset, ArchiveId, Response as R, UserApiToken, DepInfo, PrivacyInfo } from "./datatypes/types";
+import { AdminData, Login, Project, Role, Start, User, UserProjects, Group, GroupDetails, GroupToUser, IdTupel, DataFilter, ExportFilter, UserData, PasswordReset, ArchiveId, Response as R, UserApiToken, DepInfo, PrivacyInfo, SeriesFilter, SeriesData, TrackingOperation, TrackingOperationResult, ImportResult } from "./datatypes/types";
 
 const BASE_URL = import.meta.env.VITE_BASE_URL as string;
 
@@ -234,6 +234,11 @@ export const startTracking = async (start: Start): Promise<boolean> => {
     return returnOrDefault<boolean>(res, false);
 }
 
+export const switchTracking = async (start: Start): Promise<Tracked | null> => {
+    const res = await runPost("switch", start);
+    return returnOrNull<Tracked>(res);
+}
+
 export const deleteTracking = async (id: number): Promise<boolean> => {
     const res = await runPost("delete", id);
     return returnOrDefault<boolean>(res, false);
@@ -249,6 +254,50 @@ export const getMonthMins = async (): Promise<number> => {
     return returnOrDefault<number>(res, 0);
 }
 
+export interface UserEventHandlers {
+    onTracking: (tracking: Tracked | null) => void;
+    onMonth: (minutes: number) => void;
+    onResync: () => void;
+}
+
+export const subscribeUserEvents = (handlers: UserEventHandlers): (() => void) => {
+    let source: EventSource | null = null;
+    let retry: ReturnType<typeof setTimeout> | null = null;
+    let closed = false;
+    const payload = (e: Event): any | null => {
+        const res: R = JSON.parse((e as MessageEvent).data);
+        return res.payload ?? null;
+    }
+    const connect = (): void => {
+        source = new EventSource(BASE_URL + "events", { withCredentials: true });
+        source.addEventListener("tracking", (e) => handlers.onTracking(returnOrNull<Tracked>(payload(e))));
+        source.addEventListener("month", (e) => handlers.onMonth(returnOrDefault<number>(payload(e), 0)));
+        source.addEventListener("resync", () => handlers.onResync());
+        source.onerror = async (): Promise<void> => {
+            // the browser reconnects by itself, unless the stream was refused, e.g. because the token expired
+            if (closed || source?.readyState !== EventSource.CLOSED) {
+                return;
+            }
+            await fetch(BASE_URL + "refresh", { method: 'GET', credentials: "include" });
+            retry = setTimeout(() => {
+                if (!closed) {
+                    // a new stream does not know the last event, so whatever happened in between is loaded again
+                    connect();
+                    handlers.onResync();
+                }
+            }, 5000);
+        };
+    }
+    connect();
+    return (): void => {
+        closed = true;
+        if (retry !== null) {
+            clearTimeout(retry);
+        }
+        source?.close();
+    };
+}
+
 export const adminInvite = async (user: User): Promise<boolean> => {
     const res = await runPost("admin/invite", user)
     return returnOrDefault<boolean>(res, false);
@@ -325,6 +374,16 @@ export const getGroupAnalysisData = async(filter: DataFilter) : Promise<Analysis
     return returnOrNull<AnalysisData>(res);
 }
 
+export const getSeriesData = async(filter: SeriesFilter) : Promise<SeriesData | null> => {
+    const res = await runPost("series", filter)
+    return returnOrNull<SeriesData>(res);
+}
+
+export const getGroupSeriesData = async(filter: SeriesFilter) : Promise<SeriesData | null> => {
+    const res = await runPost("group/series", filter)
+    return returnOrNull<SeriesData>(res);
+}
+
 export const updatePassword = async(password: string) : Promise<boolean> => {
     const res = await runPost("user/updatePassword", password)
     return returnOrDefault<boolean>(res, false);
@@ -350,6 +409,11 @@ export const updateTracking = async(tracked: Tracked) : Promise<boolean> => {
     return returnOrDefault<boolean>(res, false);
 }
 
+export const bulkTracking = async(operations: TrackingOperation[]) : Promise<TrackingOperationResult[] | null> => {
+    const res = await runPost("bulk", operations)
+    return returnOrNull<TrackingOperationResult[]>(res);
+}
+
 export const getUserDetails = async() : Promise<UserData | null> => {
     const res = await runGet("user/data")
     return returnOrNull<UserData>(res);
@@ -408,6 +472,29 @@ export const updatePrivacyInfo = async(toUpdate: PrivacyInfo): Promise<boolean>
     return returnOrDefault<boolean>(res, false);
 }
 
+export const importData = async(file: File) : Promise<ImportResult | null> => {
+    const doImport = async (): Promise<Response> => {
+        return fetch(BASE_URL + "import?timeZone=" + encodeURIComponent(Intl.DateTimeFormat().resolvedOptions().timeZone), {
+            method: 'POST',
+            body: file,
+            headers: { 'Content-Type': 'text/csv; charset=UTF-8' },
+            credentials: 'include',
+        });
+    };
+    let response = await doImport();
+    if (response.status === 401) {
+        const refResponse = await fetch(BASE_URL + "refresh", { method: 'GET', credentials: "include" });
+        if (refResponse.status === 200) {
+            response = await doImport();
+        }
+    }
+    if (await checkResponse(response)) {
+        const res: R = JSON.parse(await response.text());
+        return returnOrNull<ImportResult>(res.payload ?? null);
+    }
+    return null;
+}
+
 export const downloadExport = async(filter: ExportFilter, forGroupId?: number) : Promise<string | null> => {
     let res: BinaryResponse | null = null;
     if (forGroupId && forGroupId >= 0) {
@@ -33,7 +33,6 @@ import { FontAwesomeIcon } from "@fortawesome/react-fontawesome";
 import { faCircleStop } from "@fortawesome/free-solid-svg-icons";
 import { Tracked } from "../../datatypes/final";
 import { convertUtcToLocalDate, convertUtcToLocalTime } from "../../Func";
-import { getActive } from "../../Api";
 
 export interface TrackingProps {
     tracking: Tracked | null;
@@ -97,21 +96,6 @@ export const Tracking = (props: TrackingProps): ReactElement => {
         };
     }, [])
 
-    useEffect(() => {
-        const update = setInterval(async () => {
-            const res: Tracked | null = await getActive();
-            if (res === null) {
-                location.reload();
-            } else if ( res.id !== props.tracking?.id) {
-                location.reload();
-            }
-        }, 5000);
-
-        return (): void =>  {
-            clearInterval(update);
-        };
-    }, [])
-
     const stop = (): void => {
         props.onStop();
     }
@@ -28,7 +28,7 @@ import { BarChart, Bar, XAxis, YAxis, CartesianGrid, Tooltip, Legend, Responsive
 import './activity.scss'
 import { AnalysisData, Tracked } from "../../datatypes/final";
 import { getDayName, getEndOfDay, getEndOfMonth, getEndOfWeek, getShortDate, getStartOfDay, getStartOfMonth, getStartOfWeek, getUtc, MinToStringWithoutSeconds } from "../../Func";
-import { downloadExport, getAnalysisData, getGroupAnalysisData } from "../../Api";
+import { downloadExport, getAnalysisData, getGroupAnalysisData, importData } from "../../Api";
 import { DataFilter, Project } from "../../datatypes/types";
 import { FontAwesomeIcon } from "@fortawesome/react-fontawesome";
 import { faArrowLeft, faArrowRight } from "@fortawesome/free-solid-svg-icons";
@@ -201,6 +201,22 @@ export const Activity = (props: ActivityProps) : ReactElement => {
         fetchAndSetData(filter)
     },[filter])
 
+    const importFile = async (input: HTMLInputElement): Promise<void> => {
+        const file = input.files?.item(0);
+        if (!file) {
+            return;
+        }
+        const res = await importData(file);
+        input.value = "";
+        if (res === null) {
+            alert("Import failed");
+            return;
+        }
+        alert("Imported: " + res.imported + "\nAlready tracked: " + res.duplicates + "\nRejected: " + res.rejected
+            + (res.errors.length > 0 ? "\n\n" + res.errors.join("\n") : ""));
+        fetchAndSetData(filter);
+    }
+
     const getProjectName = (id: number): string => {
         const project = projects.find(p => p.id === id);
         if (project) {
@@ -435,5 +451,10 @@ export const Activity = (props: ActivityProps) : ReactElement => {
             <input type="checkbox" checked={detailed} onChange={(e) => setDetailed(e.target.checked)}/>
             <button onClick={() => downloadExport({filter: filter, detailed: detailed}, props.groupId)}>Export</button>
         </div>
+        {props.groupId === undefined && <div className="export">
+            <h3>Import CSV</h3>
+            <label>Detailed Export File</label>
+            <input type="file" accept=".csv,text/csv" onChange={(e) => importFile(e.target)}/>
+        </div>}
     </div>
 }
@@ -28,8 +28,8 @@ import { Tracking } from "../tracking/Tracking";
 import { FontAwesomeIcon } from "@fortawesome/react-fontawesome";
 import { faTrashAlt } from "@fortawesome/free-solid-svg-icons";
 import { Project, UserProjects as P } from "../../datatypes/types";
-import { ReactElement, useEffect, useState } from "react";
-import { getActive, getMonthMins, getProjects, startTracking, stopTracking, userDelProject } from "../../Api";
+import { ReactElement, useEffect, useRef, useState } from "react";
+import { getActive, getMonthMins, getProjects, stopTracking, subscribeUserEvents, switchTracking, userDelProject } from "../../Api";
 
 import { Add } from "../common/add/Add";
 import { AddProject } from "../common/addProject/AddProject";
@@ -64,6 +64,26 @@ export const UserProjects = (): ReactElement => {
       console.log("fetching data, useEffect");
       fetchAndSetData();
     }, [])
+
+    // timer changes made in other tabs or through the api arrive as events
+    const activeId = useRef<number | null>(null);
+    useEffect(() => {
+      activeId.current = tracking?.id ?? null;
+    }, [tracking])
+
+    useEffect(() => {
+      return subscribeUserEvents({
+        onTracking: (t: Tracked | null) => {
+          if ((t?.id ?? null) !== activeId.current) {
+            fetchAndSetData();
+          } else {
+            setTracking(t);
+          }
+        },
+        onMonth: (minutes: number) => setTotalMonth(minutes),
+        onResync: () => fetchAndSetData()
+      });
+    }, [])
   
     const closeDialog = async (): Promise<void> => {
         setDialog(false);
@@ -75,14 +95,9 @@ export const UserProjects = (): ReactElement => {
     }
   
     const beginTracking = async (id: number): Promise<void> => {
-      const res = await startTracking({ projectID: id, timeZone: Intl.DateTimeFormat().resolvedOptions().timeZone })
-      if (res) {
-        const t = await getActive();
-        console.log("timzone: " + Intl.DateTimeFormat().resolvedOptions().timeZone);
-        setTracking(t);
-      } else {
-        setTracking(null);
-      }
+      // stops whatever runs in another tab and returns the new entry in one request
+      const t = await switchTracking({ projectID: id, timeZone: Intl.DateTimeFormat().resolvedOptions().timeZone })
+      setTracking(t);
     }
   
     const endTracking = async (): Promise<void> => {
@@ -162,6 +177,7 @@ export const UserProjects = (): ReactElement => {
   
     const renderTracking = (): ReactElement => {
       return <Tracking
+        key={tracking?.id}
         onStop={endTracking}
         title={getTitleForActive()}
         tracking={tracking}
@@ -89,6 +89,13 @@ export interface IdTupel {
     id2: number;
 }
 
+export interface ImportResult {
+    imported: number;
+    duplicates: number;
+    rejected: number;
+    errors: string[];
+}
+
 export interface Login {
     mail: string;
     password: string;
@@ -108,6 +115,39 @@ export interface Response {
     payload: any;
 }
 
+export interface SeriesData {
+    projects: Project[];
+    groupProjects: Project[];
+    users: { [index: string]: string };
+    series: SeriesPoint[];
+}
+
+export interface SeriesFilter {
+    start: string;
+    end: string;
+    bucket: SeriesBucket;
+    groupBy: SeriesGroupBy;
+    timezone: string;
+    groupId?: number;
+}
+
+export interface SeriesPoint {
+    key: number;
+    bucket: string;
+    minutes: number;
+    entries: number;
+}
+
+export interface TrackingOperation {
+    action: TrackingAction;
+    entry: any;
+}
+
+export interface TrackingOperationResult {
+    status: OperationStatus;
+    id: number;
+}
+
 export interface UserApiToken {
     id: number;
     description: string;
@@ -129,3 +169,11 @@ export interface UserProjects {
 export type RefType = "USER" | "GROUP";
 
 export type Role = "USER" | "GROUP" | "ADMIN" | "ANALYST";
+
+export type SeriesBucket = "HOUR" | "DAY" | "WEEK" | "MONTH";
+
+export type SeriesGroupBy = "PROJECT" | "USER";
+
+export type TrackingAction = "CREATE" | "UPDATE" | "DELETE";
+
+export type OperationStatus = "OK" | "INVALID" | "NOT_FOUND" | "FORBIDDEN" | "CONFLICT";
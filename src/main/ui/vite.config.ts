@@ -1,10 +1,44 @@
-import { defineConfig } from 'vite'
+import { defineConfig, type Plugin } from 'vite'
 import react from '@vitejs/plugin-react'
+import { readdirSync, readFileSync, writeFileSync } from 'node:fs'
+import { join, resolve } from 'node:path'
+import { brotliCompressSync, constants, gzipSync } from 'node:zlib'
+
+const COMPRESSIBLE = /\.(js|css|html|svg|json)$/
+const MIN_COMPRESS_SIZE = 1024
+
+// writes .br and .gz next to the hashed assets, the server picks one by Accept-Encoding
+function precompress(): Plugin {
+    let assetsDir = ''
+    return {
+        name: 'precompress',
+        apply: 'build',
+        configResolved(config) {
+            assetsDir = resolve(config.root, config.build.outDir, config.build.assetsDir)
+        },
+        closeBundle() {
+            for (const file of readdirSync(assetsDir)) {
+                if (!COMPRESSIBLE.test(file)) {
+                    continue
+                }
+                const path = join(assetsDir, file)
+                const content = readFileSync(path)
+                if (content.length < MIN_COMPRESS_SIZE) {
+                    continue
+                }
+                writeFileSync(path + '.br', brotliCompressSync(content, {
+                    params: { [constants.BROTLI_PARAM_QUALITY]: constants.BROTLI_MAX_QUALITY },
+                }))
+                writeFileSync(path + '.gz', gzipSync(content, { level: 9 }))
+            }
+        },
+    }
+}
 
 export default defineConfig({
     // depending on your application, base can also be "/"
     base: '/',
-    plugins: [react()],
+    plugins: [react(), precompress()],
     build: {
         outDir: '../resources/frontend/',
         emptyOutDir: true, // also necessary
@@ -15,4 +49,4 @@ export default defineConfig({
         // this sets a default port to 3000
         port: 3000,
     },
-})
\ No newline at end of file
+})
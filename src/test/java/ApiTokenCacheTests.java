@@ -0,0 +1,105 @@
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import de.OneManProjects.Database;
+import de.OneManProjects.security.ApiTokenCache;
+import de.OneManProjects.security.TokenType;
+import de.OneManProjects.security.UserToken;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+
+import java.sql.SQLException;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ApiTokenCacheTests {
+
+    @BeforeEach
+    void clearTokenCache() {
+        ApiTokenCache.clear();
+    }
+
+    @Test
+    void testSecondLookupIsServedFromCache() throws SQLException {
+        final UserToken token = new UserToken("digest", 5, Optional.empty(), TokenType.API_TOKEN, "testing");
+        try (final MockedStatic<Database> dbMock = mockStatic(Database.class)) {
+            dbMock.when(() -> Database.getToken("apiToken")).thenReturn(Optional.of(token));
+            final long hits = ApiTokenCache.hits();
+            final long misses = ApiTokenCache.misses();
+
+            assertEquals(5, ApiTokenCache.get("apiToken").orElseThrow().user());
+            assertEquals(5, ApiTokenCache.get("apiToken").orElseThrow().user());
+
+            dbMock.verify(() -> Database.getToken("apiToken"), times(1));
+            assertEquals(hits + 1, ApiTokenCache.hits());
+            assertEquals(misses + 1, ApiTokenCache.misses());
+        }
+    }
+
+    @Test
+    void testInvalidateUserForcesReload() throws SQLException {
+        final UserToken token = new UserToken("digest", 6, Optional.empty(), TokenType.API_TOKEN, "testing");
+        try (final MockedStatic<Database> dbMock = mockStatic(Database.class)) {
+            dbMock.when(() -> Database.getToken("apiToken")).thenReturn(Optional.of(token));
+            ApiTokenCache.get("apiToken");
+            ApiTokenCache.invalidateUser(6);
+            dbMock.when(() -> Database.getToken("apiToken")).thenReturn(Optional.empty());
+
+            assertTrue(ApiTokenCache.get("apiToken").isEmpty());
+            assertEquals(0, ApiTokenCache.size());
+        }
+    }
+
+    @Test
+    void testInvalidationDuringLoadIsNotUndone() throws SQLException {
+        final UserToken token = new UserToken("digest", 8, Optional.empty(), TokenType.API_TOKEN, "testing");
+        try (final MockedStatic<Database> dbMock = mockStatic(Database.class)) {
+            // the token is deleted and its user invalidated while the row is being read
+            dbMock.when(() -> Database.getToken("apiToken")).thenAnswer(invocation -> {
+                ApiTokenCache.invalidateUser(8);
+                return Optional.of(token);
+            });
+            assertEquals(8, ApiTokenCache.get("apiToken").orElseThrow().user());
+            assertEquals(0, ApiTokenCache.size());
+
+            dbMock.when(() -> Database.getToken("apiToken")).thenReturn(Optional.empty());
+            assertTrue(ApiTokenCache.get("apiToken").isEmpty());
+        }
+    }
+
+    @Test
+    void testOtherTokenTypesAreNotAccepted() throws SQLException {
+        final UserToken token = new UserToken("digest", 7, Optional.empty(), TokenType.REFRESH_TOKEN, "");
+        try (final MockedStatic<Database> dbMock = mockStatic(Database.class)) {
+            dbMock.when(() -> Database.getToken("refreshToken")).thenReturn(Optional.of(token));
+            assertTrue(ApiTokenCache.get("refreshToken").isEmpty());
+            assertEquals(0, ApiTokenCache.size());
+        }
+    }
+}
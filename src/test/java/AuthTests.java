@@ -23,12 +23,16 @@
  * THE SOFTWARE.
  * #L%
  */
+import de.OneManProjects.security.ApiTokenCache;
 import de.OneManProjects.security.Auth;
+import de.OneManProjects.security.Principal;
+import de.OneManProjects.security.RoleVersions;
 import de.OneManProjects.security.TokenType;
 import de.OneManProjects.data.dto.Login;
 import de.OneManProjects.data.enums.Role;
 import de.OneManProjects.security.UserToken;
 import io.javalin.http.Context;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockedStatic;
 
@@ -42,6 +46,12 @@ import static org.mockito.Mockito.*;
 
 public class AuthTests {
 
+    @BeforeEach
+    void clearTokenCache() {
+        ApiTokenCache.clear();
+        RoleVersions.clear();
+    }
+
     @Test
     void testHashPasswordAndVerify() {
         final String password = "mySecret123!";
@@ -133,6 +143,58 @@ public class AuthTests {
         }
     }
 
+    @Test
+    void testPrincipalIsReusedWithinRequest() throws SQLException {
+        final Context ctx = mock(Context.class);
+        when(ctx.cookieMap()).thenReturn(java.util.Map.of("jwt", "dummy"));
+        when(ctx.cookie("jwt")).thenReturn(Auth.genJWT(7));
+
+        final Optional<Principal> principal = Auth.authenticate(ctx);
+        assertTrue(principal.isPresent());
+        assertEquals(TokenType.JWT, principal.get().getTokenType());
+        verify(ctx).attribute(Auth.PRINCIPAL_ATTRIBUTE, principal.get());
+
+        when(ctx.attribute(Auth.PRINCIPAL_ATTRIBUTE)).thenReturn(principal.get());
+        assertEquals(7, Auth.getUserFromContext(ctx));
+        verify(ctx, times(1)).cookie("jwt");
+    }
+
+    @Test
+    void testRoleClaimsAreUsedUntilRoleVersionChanges() throws SQLException {
+        final Context ctx = mock(Context.class);
+        when(ctx.cookieMap()).thenReturn(java.util.Map.of("jwt", "dummy"));
+        when(ctx.cookie("jwt")).thenReturn(Auth.genJWT(5, List.of(Role.ADMIN), 2));
+
+        try (final MockedStatic<de.OneManProjects.Database> dbMock = mockStatic(de.OneManProjects.Database.class)) {
+            RoleVersions.advance(5, 2);
+            final Optional<Principal> principal = Auth.authenticate(ctx);
+            assertTrue(principal.isPresent());
+            assertTrue(principal.get().hasRole(Role.ADMIN));
+            dbMock.verify(() -> de.OneManProjects.Database.getUserRoles(anyInt()), never());
+
+            RoleVersions.advance(5, 3);
+            assertTrue(Auth.authenticate(ctx).isEmpty());
+        }
+    }
+
+    @Test
+    void testRoleVersionOnlyMovesForward() throws SQLException {
+        try (final MockedStatic<de.OneManProjects.Database> dbMock = mockStatic(de.OneManProjects.Database.class)) {
+            RoleVersions.advance(8, 3);
+            RoleVersions.advance(8, 2);
+            assertEquals(3, RoleVersions.current(8));
+
+            // a role change arrives while a load is still reading the old version
+            RoleVersions.evict(8);
+            dbMock.when(() -> de.OneManProjects.Database.getRoleVersion(8)).thenAnswer(invocation -> {
+                RoleVersions.advance(8, 5);
+                return 4;
+            });
+            assertEquals(5, RoleVersions.current(8));
+            assertEquals(5, RoleVersions.current(8));
+        }
+    }
+
     @Test
     void testIsUserAdmin() throws SQLException {
         final Context ctx = mock(Context.class);
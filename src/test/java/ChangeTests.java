@@ -0,0 +1,55 @@
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+import de.OneManProjects.events.Change;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChangeTests {
+
+    @Test
+    void testChangesSurviveEncoding() {
+        for (final Change change : List.of(Change.tracking(42), Change.user(7), Change.tokens(1), Change.roles(3, 4),
+                Change.userDeleted(9), Change.shared(), Change.resync())) {
+            assertEquals(change, Change.decode(change.encode()).orElseThrow());
+        }
+        assertEquals("T42", Change.tracking(42).encode());
+        assertEquals("R3:4", Change.roles(3, 4).encode());
+        assertEquals("S", Change.shared().encode());
+        assertEquals(Change.roles(3, 0), Change.decode("R3").orElseThrow());
+    }
+
+    @Test
+    void testUnknownOrBrokenChangesAreIgnored() {
+        assertTrue(Change.decode("Z12").isEmpty());
+        assertTrue(Change.decode("Tabc").isEmpty());
+        assertTrue(Change.decode("R3:x").isEmpty());
+        assertTrue(Change.decode("").isEmpty());
+        assertTrue(Change.decode(null).isEmpty());
+    }
+}
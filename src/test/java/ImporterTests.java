@@ -0,0 +1,96 @@
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+import de.OneManProjects.data.Project;
+import de.OneManProjects.export.Importer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImporterTests {
+
+    private static final List<Project> PROJECTS = List.of(
+            new Project(1, 1, "USER", "Work", "", "#ffffff", false),
+            new Project(2, 1, "USER", "Sales, EMEA", "", "#ffffff", false),
+            new Project(3, 1, "GROUP", "Work", "", "#ffffff", false),
+            new Project(4, 1, "USER", "\"Big\" launch", "", "#ffffff", false));
+
+    private static String convert(final Importer importer) throws IOException {
+        final StringWriter out = new StringWriter();
+        try (final Reader rows = importer.copyRows()) {
+            rows.transferTo(out);
+        }
+        return out.toString();
+    }
+
+    private static Importer importer(final String csv) {
+        return new Importer(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), PROJECTS, "Europe/Berlin");
+    }
+
+    @Test
+    void testExportedLinesBecomeCopyRows() throws IOException {
+        final Importer importer = importer("Project;Start;End;Duration hh::mm;Description\n" +
+                "Work,2026-09-01 08:00:00.0,2026-09-01 09:30:00.0,1:30,daily, with comma\n" +
+                "Sales, EMEA,2026-09-02 10:00:00.0,2026-09-02 10:15:00.0,0:15,\n");
+        assertEquals("1\t2026-09-01 08:00:00.0\t2026-09-01 09:30:00.0\tEurope/Berlin\n" +
+                "2\t2026-09-02 10:00:00.0\t2026-09-02 10:15:00.0\tEurope/Berlin\n", convert(importer));
+        assertEquals(2, importer.accepted());
+        assertEquals(0, importer.rejected());
+    }
+
+    @Test
+    void testInvalidLinesAreRejectedAndReported() throws IOException {
+        final Importer importer = importer("Unknown,2026-09-01 08:00:00.0,2026-09-01 09:00:00.0,1:00,\n" +
+                "Work,2026-09-01 10:00:00.0,2026-09-01 09:00:00.0,-,\n" +
+                "Work,2026-09-01 10:00:00.0,null,-,\n" +
+                "\n" +
+                "garbage\n" +
+                "Work,2026-09-03 10:00:00.0,2026-09-03 11:00:00.0,1:00,\n");
+        assertEquals("1\t2026-09-03 10:00:00.0\t2026-09-03 11:00:00.0\tEurope/Berlin\n", convert(importer));
+        assertEquals(1, importer.accepted());
+        assertEquals(4, importer.rejected());
+        assertEquals(List.of("line 1: unknown project 'Unknown'", "line 2: the entry ends before it starts",
+                "line 3: the entry has no end", "line 5: no start and end time found"), importer.errors());
+    }
+
+    @Test
+    void testQuotedColumnsOfTheCopyExportAreRead() throws IOException {
+        final Importer importer = importer("Project,Start,End,Duration hh::mm,Description,User\n" +
+                "\"Sales, EMEA\",2026-09-02 10:00:00.0,2026-09-02 10:15:00.0,0:15,\"says \"\"hi\"\", twice\",a@b.de\n" +
+                "\"Work\",2026-09-03 10:00:00.0,2026-09-03 11:00:00.0,1:00,,a@b.de\n" +
+                "\"Big\" launch,2026-09-04 10:00:00.0,2026-09-04 11:00:00.0,1:00,\n");
+        assertEquals("2\t2026-09-02 10:00:00.0\t2026-09-02 10:15:00.0\tEurope/Berlin\n" +
+                "1\t2026-09-03 10:00:00.0\t2026-09-03 11:00:00.0\tEurope/Berlin\n" +
+                "4\t2026-09-04 10:00:00.0\t2026-09-04 11:00:00.0\tEurope/Berlin\n", convert(importer));
+        assertEquals(0, importer.rejected());
+    }
+}
@@ -0,0 +1,75 @@
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+import de.OneManProjects.metrics.LatencyHistogram;
+import de.OneManProjects.metrics.PrometheusText;
+import de.OneManProjects.metrics.Metrics;
+import de.OneManProjects.metrics.QueryMetrics;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTests {
+
+    @Test
+    void testHistogramBucketsAreCumulativeAndInclusive() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(32);
+        histogram.record(33);
+        histogram.record(1_000_000);
+        histogram.record(Long.MAX_VALUE / 2);
+        final PrometheusText text = new PrometheusText();
+        histogram.write(text, "t", "route", "/a");
+        final String scrape = text.toString();
+        assertTrue(scrape.contains("t_bucket{route=\"/a\",le=\"0.000032\"} 1\n"));
+        assertTrue(scrape.contains("t_bucket{route=\"/a\",le=\"0.000064\"} 2\n"));
+        assertTrue(scrape.contains("t_bucket{route=\"/a\",le=\"1.048576\"} 3\n"));
+        assertTrue(scrape.contains("t_bucket{route=\"/a\",le=\"+Inf\"} 4\n"));
+        assertTrue(scrape.contains("t_count{route=\"/a\"} 4\n"));
+    }
+
+    @Test
+    void testLabelValuesAreEscaped() {
+        final String scrape = new PrometheusText().sample("m", 1.5, "path", "a\"b\\c\nd").toString();
+        assertEquals("m{path=\"a\\\"b\\\\c\\nd\"} 1.5\n", scrape);
+    }
+
+    @Test
+    void testQueriesDifferingInLiteralsShareAFingerprint() {
+        final QueryMetrics.Query query = QueryMetrics.query("SELECT * FROM tracking WHERE id = 5 AND note = 'a'");
+        assertSame(query, QueryMetrics.query("SELECT *  FROM tracking\nWHERE id = 17 AND note = 'it''s'"));
+        assertSame(QueryMetrics.query("SELECT * FROM projects WHERE id IN (?, ?)"), QueryMetrics.query("SELECT * FROM projects WHERE id IN (?,?,?)"));
+        assertNotSame(query, QueryMetrics.query("SELECT * FROM projects WHERE id = 5"));
+    }
+
+    @Test
+    void testScrapeContainsHashingAndTokenCacheStats() {
+        final String scrape = Metrics.scrape();
+        assertTrue(scrape.contains("# TYPE klukka_password_hash_queue_depth gauge\nklukka_password_hash_queue_depth "));
+        assertTrue(scrape.contains("# TYPE klukka_password_hash_rejected_total counter\n"));
+        assertTrue(scrape.contains("# TYPE klukka_api_token_cache_hits_total counter\nklukka_api_token_cache_hits_total "));
+        assertTrue(scrape.contains("\nklukka_api_token_cache_size "));
+    }
+}
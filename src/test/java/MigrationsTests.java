@@ -0,0 +1,62 @@
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import de.OneManProjects.database.Migration;
+import de.OneManProjects.database.Migrations;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MigrationsTests {
+
+    @Test
+    void testVersionsAreAscendingAndUnique() {
+        int last = 0;
+        for (final Migration migration : Migrations.MIGRATIONS) {
+            assertTrue(migration.version() > last, "migration " + migration.version() + " is out of order");
+            assertFalse(migration.statements().isEmpty());
+            last = migration.version();
+        }
+    }
+
+    @Test
+    void testChecksumIsStable() {
+        final Migration a = Migration.transactional(1, "test", "CREATE TABLE a (id INTEGER)", "CREATE TABLE b (id INTEGER)");
+        final Migration b = Migration.transactional(1, "renamed", " CREATE TABLE a (id INTEGER) ", "CREATE TABLE b (id INTEGER)");
+        final Migration c = Migration.transactional(1, "test", "CREATE TABLE a (id BIGINT)", "CREATE TABLE b (id INTEGER)");
+        assertEquals(a.checksum(), b.checksum());
+        assertNotEquals(a.checksum(), c.checksum());
+    }
+
+    @Test
+    void testConcurrentIndexDropsLeftoversFirst() {
+        final List<String> statements = Migration.concurrentIndex("x_idx", "x", "(a) WHERE b = true", true);
+        assertEquals("DROP INDEX CONCURRENTLY IF EXISTS x_idx", statements.get(0));
+        assertEquals("CREATE UNIQUE INDEX CONCURRENTLY x_idx ON x (a) WHERE b = true", statements.get(1));
+    }
+}
@@ -0,0 +1,67 @@
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+import de.OneManProjects.data.Project;
+import de.OneManProjects.export.ProjectIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProjectIndexTests {
+
+    private static Project project(final int id, final String title) {
+        return new Project(id, 1, "USER", title, "", "#ffffff", false);
+    }
+
+    @Test
+    void testLookupFindsEveryProject() {
+        final List<Project> projects = new ArrayList<>();
+        for (int id = 1; id <= 1000; id += 7) {
+            projects.add(project(id, "p" + id));
+        }
+        final ProjectIndex index = ProjectIndex.of(projects);
+        for (final Project project : projects) {
+            assertSame(project, index.get(project.getId()).orElseThrow());
+        }
+        assertTrue(index.get(2).isEmpty());
+        assertTrue(index.get(0).isEmpty());
+        assertTrue(index.get(-5).isEmpty());
+    }
+
+    @Test
+    void testFirstProjectWinsForDuplicateIds() {
+        final Project first = project(3, "first");
+        final ProjectIndex index = ProjectIndex.of(List.of(first, project(3, "second")));
+        assertSame(first, index.get(3).orElseThrow());
+    }
+
+    @Test
+    void testEmptyIndex() {
+        assertTrue(ProjectIndex.of(List.of()).get(1).isEmpty());
+    }
+}
@@ -0,0 +1,92 @@
+package de.OneManProjects;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import com.google.gson.Gson;
+import de.OneManProjects.data.Project;
+import de.OneManProjects.data.Tracked;
+import de.OneManProjects.data.dto.AnalysisData;
+import de.OneManProjects.data.dto.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing the analysis response with the Gson instance the app registers as its JSON mapper.
+ * Run with {@code mvn -Pbenchmark test -Djmh.include=GsonBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GsonBenchmark {
+
+    private static final int USER = 42;
+    private static final int PROJECTS = 20;
+
+    @Param({"10000"})
+    public int rows;
+
+    private Gson gson;
+    private Response response;
+
+    @Setup
+    public void setup() {
+        gson = Main.createGson();
+        final List<Project> projects = new ArrayList<>();
+        for (int i = 0; i < PROJECTS; i++) {
+            projects.add(new Project(i, USER, "USER", "Project " + i, "Description " + i, "#3366cc", false));
+        }
+        final List<Tracked> tracked = new ArrayList<>(rows);
+        final long base = Timestamp.valueOf("2024-01-01 08:00:00").getTime();
+        for (int i = 0; i < rows; i++) {
+            final long start = base + i * 3_600_000L;
+            tracked.add(new Tracked(i, USER, i % PROJECTS, new Timestamp(start), new Timestamp(start + 2_700_000L), "Europe/Berlin"));
+        }
+        response = new Response(new AnalysisData(projects, List.of(), tracked));
+    }
+
+    @Benchmark
+    public String analysisResponse() {
+        return gson.toJson(response, Response.class);
+    }
+}
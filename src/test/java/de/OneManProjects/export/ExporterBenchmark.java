@@ -0,0 +1,120 @@
+package de.OneManProjects.export;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import de.OneManProjects.Database;
+import de.OneManProjects.data.Project;
+import de.OneManProjects.data.Tracked;
+import de.OneManProjects.data.dto.DataFilter;
+import de.OneManProjects.data.dto.ExportFilter;
+import de.OneManProjects.database.RowHandler;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * Formatting a detailed user export, with the database replaced by rows held in memory so only the CSV writing is measured.
+ * Run with {@code mvn -Pbenchmark test -Djmh.include=ExporterBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dnet.bytebuddy.experimental=true")
+public class ExporterBenchmark {
+
+    private static final int USER = 42;
+    private static final int PROJECTS = 20;
+
+    @Param({"10000", "1000000"})
+    public int rows;
+
+    private ExportFilter filter;
+    private MockedStatic<Database> database;
+
+    // static mocks are bound to the thread, which for thread scoped state is the one running the benchmark
+    @Setup(Level.Trial)
+    public void setup() {
+        final List<Project> projects = new ArrayList<>();
+        for (int i = 0; i < PROJECTS; i++) {
+            projects.add(new Project(i, USER, "USER", "Project " + i, "Description " + i, "#3366cc", false));
+        }
+        final List<Tracked> tracked = new ArrayList<>(rows);
+        final long base = Timestamp.valueOf("2020-01-01 08:00:00").getTime();
+        for (int i = 0; i < rows; i++) {
+            final long start = base + i * 600_000L;
+            tracked.add(new Tracked(i, USER, i % PROJECTS, new Timestamp(start), new Timestamp(start + 540_000L), "Europe/Berlin"));
+        }
+        filter = new ExportFilter(new DataFilter("2020-01-01T00:00:00Z", "2040-01-01T00:00:00Z", Optional.empty()), true, Optional.empty());
+
+        database = Mockito.mockStatic(Database.class);
+        database.when(() -> Database.getProjects(USER, true)).thenReturn(projects);
+        database.when(() -> Database.getUserGroupProjects(USER)).thenReturn(List.of());
+        database.when(() -> Database.streamTrackedForRange(eq(USER), any(), any(), any())).thenAnswer(invocation -> {
+            final RowHandler<Tracked> handler = invocation.getArgument(3);
+            for (final Tracked row : tracked) {
+                handler.accept(row);
+            }
+            return null;
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public void detailedUserExport() throws SQLException, IOException {
+        Exporter.exportUserData(filter, USER, OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,190 @@
+package de.OneManProjects.loadtest;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import de.OneManProjects.Database;
+import de.OneManProjects.Main;
+import de.OneManProjects.database.DatabaseConfig;
+import de.OneManProjects.utils.Util;
+import io.javalin.Javalin;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Starts the app in this JVM against the database from the usual DATABASE_* variables, seeds it and replays the
+ * traffic mix of {@link VirtualUser} with one thread per simulated user. The users start spread over the warmup,
+ * whose requests are not counted.
+ * Prints throughput and latency percentiles per route at the end.
+ * <p>
+ * Run with {@code mvn -Ploadtest test -Dloadtest.args="users=50 duration=120"} against a database that holds nothing
+ * you want to keep, the seeded users stay in it for the next run.
+ */
+public final class LoadTest {
+
+    private final Options options;
+    private final String baseUrl;
+    private final HttpClient client;
+    private final ConcurrentMap<String, RouteStats> routes = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+    private volatile boolean measuring = false;
+
+    private LoadTest(final Options options, final String baseUrl) {
+        this.options = options;
+        this.baseUrl = baseUrl;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    public static void main(final String[] args) throws SQLException, IOException, InterruptedException {
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        final Options options = Options.parse(args);
+        Database.configure(DatabaseConfig.fromEnv());
+        Database.initDataBase();
+        // only used for the CORS rule, the virtual users send no Origin
+        final Optional<String> appUrl = Util.getEnvVar("APPLICATION_URL", s -> s, false).or(() -> Optional.of("http://localhost"));
+        final Javalin app = Main.createJavalinApp(false, appUrl).start(options.port());
+        try {
+            final List<SeededUser> users = Seeder.seed(options);
+            final LoadTest test = new LoadTest(options, "http://localhost:" + app.port());
+            test.run(users);
+        } finally {
+            app.stop();
+            Database.shutdown();
+        }
+    }
+
+    HttpClient client() {
+        return client;
+    }
+
+    String baseUrl() {
+        return baseUrl;
+    }
+
+    Options options() {
+        return options;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    void record(final String route, final long nanos, final boolean ok) {
+        if (measuring) {
+            routes.computeIfAbsent(route, r -> new RouteStats()).record(nanos, ok);
+        }
+    }
+
+    private void run(final List<SeededUser> users) throws InterruptedException {
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            final Duration rampUp = options.warmup().multipliedBy(i).dividedBy(users.size());
+            threads.add(Thread.ofPlatform().name("virtual-user-" + i).start(new VirtualUser(this, users.get(i), rampUp, i)));
+        }
+        Thread.sleep(options.warmup().toMillis());
+        measuring = true;
+        final long started = System.nanoTime();
+        Thread.sleep(options.duration().toMillis());
+        measuring = false;
+        final double seconds = (System.nanoTime() - started) / 1e9;
+        running = false;
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        report(seconds);
+    }
+
+    private void report(final double seconds) {
+        System.out.printf("%n%d users, think time %d ms, %.1f s measured after %d s warmup%n%n",
+                options.users(), options.think().toMillis(), seconds, options.warmup().toSeconds());
+        System.out.printf("%-24s %9s %7s %9s %9s %9s %9s %9s%n", "route", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        final RouteStats total = new RouteStats();
+        routes.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(route -> {
+            final RouteStats.Summary summary = route.getValue().summary();
+            print(route.getKey(), summary, seconds);
+            total.add(summary);
+        });
+        print("total", total.summary(), seconds);
+    }
+
+    private static void print(final String route, final RouteStats.Summary summary, final double seconds) {
+        System.out.printf("%-24s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n", route, summary.count(), summary.errors(), summary.count() / seconds,
+                summary.percentileMillis(50), summary.percentileMillis(90), summary.percentileMillis(99), summary.percentileMillis(100));
+    }
+
+    /**
+     * Settings of a run, given as key=value arguments. Durations are in seconds, the think time in milliseconds and
+     * is the mean of a uniform pause between the requests of one user.
+     */
+    record Options(int users, int groupSize, int projects, int months, Duration duration, Duration warmup, Duration think, int port) {
+
+        static Options parse(final String[] args) {
+            final Map<String, String> values = new HashMap<>();
+            for (final String arg : args) {
+                final int eq = arg.indexOf('=');
+                if (eq < 1) {
+                    throw new IllegalArgumentException("expected key=value but got " + arg);
+                }
+                values.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+            final Options options = new Options(
+                    take(values, "users", 20),
+                    take(values, "groupSize", 10),
+                    take(values, "projects", 5),
+                    take(values, "months", 6),
+                    Duration.ofSeconds(take(values, "duration", 60)),
+                    Duration.ofSeconds(take(values, "warmup", 10)),
+                    Duration.ofMillis(take(values, "think", 100)),
+                    take(values, "port", 0));
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("unknown load test settings " + values.keySet());
+            }
+            if (options.users() < 1 || options.groupSize() < 1 || options.projects() < 1 || options.months() < 1) {
+                throw new IllegalArgumentException("users, groupSize, projects and months have to be at least 1");
+            }
+            return options;
+        }
+
+        private static int take(final Map<String, String> values, final String key, final int fallback) {
+            final String value = values.remove(key);
+            return value == null ? fallback : Integer.parseInt(value);
+        }
+    }
+}
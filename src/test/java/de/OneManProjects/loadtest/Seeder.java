@@ -0,0 +1,156 @@
+package de.OneManProjects.loadtest;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import de.OneManProjects.Database;
+import de.OneManProjects.data.Group;
+import de.OneManProjects.data.Project;
+import de.OneManProjects.data.User;
+import de.OneManProjects.data.enums.Role;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Creates the synthetic users, groups, projects and tracking history the load test runs against. Users that already
+ * exist from an earlier run are reused as they are, so only the first run against a database pays for the seeding.
+ */
+final class Seeder {
+
+    static final String PASSWORD = "loadtest";
+    static final String TIME_ZONE = "Europe/Berlin";
+
+    private static final Logger logger = LoggerFactory.getLogger(Seeder.class);
+    private static final String MAIL_DOMAIN = "@loadtest.invalid";
+    private static final String[] COLORS = {"#e6194b", "#3cb44b", "#4363d8", "#f58231", "#911eb4", "#46f0f0", "#f032e6", "#bcf60c"};
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private Seeder() {
+    }
+
+    static List<SeededUser> seed(final LoadTest.Options options) throws SQLException, IOException {
+        final long started = System.nanoTime();
+        final List<Integer> ids = new ArrayList<>();
+        final Set<Integer> created = new HashSet<>();
+        for (int i = 0; i < options.users(); i++) {
+            final String mail = mail(i);
+            final Optional<Integer> existing = Database.getUserID(mail);
+            if (existing.isPresent()) {
+                ids.add(existing.get());
+                continue;
+            }
+            final List<Role> roles = isGroupOwner(i, options) ? List.of(Role.USER, Role.GROUP) : List.of(Role.USER);
+            Database.addNewUser(new User(-1, mail, roles), PASSWORD);
+            final int id = Database.getUserID(mail).orElseThrow(() -> new IllegalStateException("seeded user " + mail + " was not stored"));
+            for (int p = 0; p < options.projects(); p++) {
+                Database.addProject(new Project(-1, id, "USER", "Project " + (p + 1), "Seeded by the load test", COLORS[p % COLORS.length], false), id);
+            }
+            ids.add(id);
+            created.add(id);
+        }
+
+        for (int i = 0; i < ids.size(); i += options.groupSize()) {
+            final int owner = ids.get(i);
+            if (!Database.getManagedGroups(owner).isEmpty()) {
+                continue;
+            }
+            Database.addNewGroup(new Group(-1, "Team " + (i / options.groupSize() + 1), "Seeded by the load test", owner), owner);
+            final int groupId = Database.getManagedGroups(owner).get(0).getId();
+            for (int p = 0; p < options.projects(); p++) {
+                Database.addGroupProject(new Project(-1, groupId, "GROUP", "Team project " + (p + 1), "Seeded by the load test", COLORS[p % COLORS.length], false));
+            }
+            for (int member = i + 1; member < Math.min(i + options.groupSize(), ids.size()); member++) {
+                Database.addUserToGroup(groupId, ids.get(member));
+            }
+        }
+
+        final List<SeededUser> users = new ArrayList<>();
+        long rows = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            final int id = ids.get(i);
+            final List<Integer> projectIds = Stream.concat(Database.getProjects(id, false).stream(), Database.getUserGroupProjects(id).stream())
+                    .map(Project::getId)
+                    .toList();
+            if (created.contains(id)) {
+                rows += importHistory(id, projectIds, options.months(), new Random(i));
+            }
+            final Optional<Integer> managedGroup = Database.getManagedGroups(id).stream().map(Group::getId).findFirst();
+            users.add(new SeededUser(id, mail(i), projectIds, managedGroup));
+        }
+        logger.info("seeded {} new of {} users with {} tracking entries in {} ms",
+                created.size(), ids.size(), rows, (System.nanoTime() - started) / 1_000_000);
+        return users;
+    }
+
+    private static String mail(final int index) {
+        return "user" + index + MAIL_DOMAIN;
+    }
+
+    private static boolean isGroupOwner(final int index, final LoadTest.Options options) {
+        return index % options.groupSize() == 0;
+    }
+
+    /**
+     * Imports a working day of three to six entries for every weekday of the past months, through the same COPY path
+     * the CSV import uses.
+     */
+    private static int importHistory(final int userId, final List<Integer> projectIds, final int months, final Random random) throws SQLException, IOException {
+        final StringBuilder rows = new StringBuilder();
+        final LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        for (LocalDate day = today.minusMonths(months); day.isBefore(today); day = day.plusDays(1)) {
+            if (day.getDayOfWeek() == DayOfWeek.SATURDAY || day.getDayOfWeek() == DayOfWeek.SUNDAY) {
+                continue;
+            }
+            LocalDateTime start = day.atTime(6, 0).plusMinutes(random.nextInt(180));
+            final int entries = 3 + random.nextInt(4);
+            for (int e = 0; e < entries; e++) {
+                final LocalDateTime end = start.plusMinutes(20 + random.nextInt(160));
+                rows.append(projectIds.get(random.nextInt(projectIds.size()))).append('\t')
+                        .append(TIMESTAMP.format(start)).append('\t')
+                        .append(TIMESTAMP.format(end)).append('\t')
+                        .append(TIME_ZONE).append('\n');
+                start = end.plusMinutes(random.nextInt(30));
+            }
+        }
+        return Database.importTracking(userId, new StringReader(rows.toString()));
+    }
+}
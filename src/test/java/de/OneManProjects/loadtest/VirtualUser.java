@@ -0,0 +1,231 @@
+package de.OneManProjects.loadtest;
+
+/*-
+ * #%L
+ * Klukka
+ * %%
+ * Copyright (C) 2025 Nikolai Reed reed@1manprojects.de
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * #L%
+ */
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * One simulated browser session. It starts after its ramp-up delay, logs in and then, until the test ends, picks the next request from the
+ * traffic mix and waits for the think time in between. Cookies and ETags are kept like a browser would.
+ *
+ * <pre>
+ *   48%  POST /api/active          polling the running timer
+ *   15%  GET  /api/projects        project list, revalidated with If-None-Match
+ *   15%  POST /api/start, /api/stop toggles the timer, a start is followed by a poll
+ *   13%  POST /api/data            analysis, group owners use /api/group/data every fourth time
+ *    7%  POST /api/export          CSV export, group owners use /api/group/export every fourth time
+ *    2%  POST /api/login           new session, hashing the password is the most expensive request
+ * </pre>
+ */
+final class VirtualUser implements Runnable {
+
+    private final LoadTest test;
+    private final SeededUser user;
+    private final Duration rampUp;
+    private final Random random;
+    private final Map<String, String> cookies = new HashMap<>();
+    private final Map<String, String> etags = new HashMap<>();
+    private int runningId = -1;
+
+    VirtualUser(final LoadTest test, final SeededUser user, final Duration rampUp, final long seed) {
+        this.test = test;
+        this.user = user;
+        this.rampUp = rampUp;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public void run() {
+        try {
+            Thread.sleep(rampUp.toMillis());
+            // a rejected login leaves the session without cookies, every later request would only measure the 401
+            while (test.isRunning() && !login()) {
+                Thread.sleep(1000);
+            }
+            while (test.isRunning()) {
+                step();
+                if (!test.options().think().isZero()) {
+                    Thread.sleep(random.nextLong(test.options().think().toMillis() * 2 + 1));
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void step() throws InterruptedException {
+        final int roll = random.nextInt(100);
+        if (roll < 48) {
+            active();
+        } else if (roll < 63) {
+            projects();
+        } else if (roll < 78) {
+            toggleTracking();
+        } else if (roll < 91) {
+            analysis();
+        } else if (roll < 98) {
+            export();
+        } else {
+            login();
+        }
+    }
+
+    private boolean login() throws InterruptedException {
+        final JsonObject body = new JsonObject();
+        body.addProperty("mail", user.mail());
+        body.addProperty("password", Seeder.PASSWORD);
+        return send("POST", "/api/login", body).filter(response -> response.statusCode() == 200).isPresent();
+    }
+
+    private void active() throws InterruptedException {
+        final Optional<JsonElement> payload = send("POST", "/api/active", null).flatMap(VirtualUser::payload);
+        runningId = payload.filter(JsonElement::isJsonObject)
+                .map(tracked -> tracked.getAsJsonObject().get("id").getAsInt())
+                .orElse(-1);
+    }
+
+    private void projects() throws InterruptedException {
+        send("GET", "/api/projects", null);
+    }
+
+    private void toggleTracking() throws InterruptedException {
+        if (runningId > 0) {
+            send("POST", "/api/stop", new JsonPrimitive(runningId));
+            runningId = -1;
+        } else {
+            final JsonObject start = new JsonObject();
+            start.addProperty("projectID", user.projectIds().get(random.nextInt(user.projectIds().size())));
+            start.addProperty("timeZone", Seeder.TIME_ZONE);
+            send("POST", "/api/start", start);
+            active();
+        }
+    }
+
+    private void analysis() throws InterruptedException {
+        final Optional<Integer> group = pickGroup();
+        send("POST", group.isPresent() ? "/api/group/data" : "/api/data", range(group));
+    }
+
+    private void export() throws InterruptedException {
+        final Optional<Integer> group = pickGroup();
+        final JsonObject filter = new JsonObject();
+        filter.add("filter", range(group));
+        filter.addProperty("detailed", random.nextBoolean());
+        filter.add("groupId", group.<JsonElement>map(JsonPrimitive::new).orElse(JsonNull.INSTANCE));
+        send("POST", group.isPresent() ? "/api/group/export" : "/api/export", filter);
+    }
+
+    private Optional<Integer> pickGroup() {
+        return user.managedGroup().filter(group -> random.nextInt(4) == 0);
+    }
+
+    /**
+     * A range ending now that reaches back between a week and the whole seeded history.
+     */
+    private JsonObject range(final Optional<Integer> group) {
+        final Instant end = Instant.now();
+        final int days = 7 + random.nextInt(Math.max(test.options().months() * 30 - 6, 1));
+        final JsonObject range = new JsonObject();
+        range.addProperty("start", end.minus(days, ChronoUnit.DAYS).truncatedTo(ChronoUnit.SECONDS).toString());
+        range.addProperty("end", end.truncatedTo(ChronoUnit.SECONDS).toString());
+        range.add("groupId", group.<JsonElement>map(JsonPrimitive::new).orElse(JsonNull.INSTANCE));
+        return range;
+    }
+
+    /**
+     * Sends the request with the session's cookies and records its latency under the route. A conflict counts as an
+     * answer, the server uses it when a timer is already running. Failed connections are recorded as errors.
+     */
+    private Optional<HttpResponse<byte[]>> send(final String method, final String path, final JsonElement body) throws InterruptedException {
+        final HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(test.baseUrl() + path))
+                .header("Accept-Encoding", "gzip")
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body.toString()));
+        if (body != null) {
+            request.header("Content-Type", "application/json");
+        }
+        if (!cookies.isEmpty()) {
+            request.header("Cookie", cookies.entrySet().stream().map(c -> c.getKey() + "=" + c.getValue()).collect(Collectors.joining("; ")));
+        }
+        final String etag = etags.get(path);
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        final String route = method + " " + path;
+        final long started = System.nanoTime();
+        try {
+            final HttpResponse<byte[]> response = test.client().send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+            test.record(route, System.nanoTime() - started, response.statusCode() < 400 || response.statusCode() == 409);
+            for (final String cookie : response.headers().allValues("Set-Cookie")) {
+                final String pair = cookie.split(";", 2)[0];
+                final int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    cookies.put(pair.substring(0, eq), pair.substring(eq + 1));
+                }
+            }
+            response.headers().firstValue("ETag").ifPresent(value -> etags.put(path, value));
+            return Optional.of(response);
+        } catch (final IOException e) {
+            test.record(route, System.nanoTime() - started, false);
+            return Optional.empty();
+        }
+    }
+
+    private static Optional<JsonElement> payload(final HttpResponse<byte[]> response) {
+        if (response.statusCode() != 200 || response.body().length == 0) {
+            return Optional.empty();
+        }
+        try (final InputStream in = response.headers().firstValue("Content-Encoding").filter("gzip"::equals).isPresent()
+                ? new GZIPInputStream(new ByteArrayInputStream(response.body()))
+                : new ByteArrayInputStream(response.body())) {
+            final JsonElement json = JsonParser.parseString(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            return json.isJsonObject() ? Optional.ofNullable(json.getAsJsonObject().get("payload")) : Optional.empty();
+        } catch (final IOException e) {
+            return Optional.empty();
+        }
+    }
+}